@@ -0,0 +1,67 @@
+package algo.weatherdata;
+
+import java.time.LocalDate;
+
+/**
+ * Share of approved readings in a period. The result has a single row, or no
+ * rows if there are no readings in the period.
+ */
+public final class ApprovedPercentage implements QueryResult {
+
+    private final LocalDate dateFrom;
+    private final LocalDate dateTo;
+    private final int approved;
+    private final int total;
+
+    ApprovedPercentage(LocalDate dateFrom, LocalDate dateTo, int approved, int total) {
+        this.dateFrom = dateFrom;
+        this.dateTo = dateTo;
+        this.approved = approved;
+        this.total = total;
+    }
+
+    @Override
+    public int size() {
+        return total > 0 ? 1 : 0;
+    }
+
+    /**
+     * @return number of approved readings in the period
+     */
+    public int approved() {
+        return approved;
+    }
+
+    /**
+     * @return number of readings in the period
+     */
+    public int total() {
+        return total;
+    }
+
+    /**
+     * @return unrounded percentage of approved readings, NaN if there are no readings
+     */
+    public double percentage() {
+        return total > 0 ? approved * 100.0 / total : Double.NaN;
+    }
+
+    //Percentage rounded to two decimals, only valid if there are readings
+    long percentageHundredths() {
+        return ResultFormat.roundedHundredths(approved * 100L, total);
+    }
+
+    /**
+     * Example: Approved values between 2000-01-01 and 2000-01-03: 32.86 %
+     */
+    @Override
+    public String format(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+        StringBuilder row = new StringBuilder(64);
+        row.append("Approved values between ").append(dateFrom).append(" and ").append(dateTo).append(": ");
+        ResultFormat.appendHundredths(row, percentageHundredths());
+        return row.append(" %").toString();
+    }
+}
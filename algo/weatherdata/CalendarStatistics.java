@@ -0,0 +1,169 @@
+package algo.weatherdata;
+
+/**
+ * Mean, lowest and highest temperature and share of approved readings for each
+ * month, year or season with readings in a period, sorted by period (ascending).
+ * Seasons are the meteorological ones, DJF (December to February), MAM, JJA and
+ * SON. A winter belongs to the year of its January, so winter 2000 starts in
+ * December 1999.
+ */
+public final class CalendarStatistics implements QueryResult {
+
+    /**
+     * The length of the periods in a result.
+     */
+    public enum Granularity {
+        MONTH,
+        YEAR,
+        SEASON
+    }
+
+    private static final String[] SEASONS = {"DJF", "MAM", "JJA", "SON"};
+
+    private final Granularity granularity;
+    //Months as year * 12 + month - 1, years, or seasons as year * 4 + season
+    private final int[] periods;
+    //Sum of temperatures in tenths of a degree
+    private final long[] sums;
+    private final int[] counts;
+    //Lowest and highest temperature in tenths of a degree
+    private final short[] mins;
+    private final short[] maxs;
+    private final int[] approved;
+    private int size;
+
+    CalendarStatistics(Granularity granularity, int capacity) {
+        this.granularity = granularity;
+        this.periods = new int[capacity];
+        this.sums = new long[capacity];
+        this.counts = new int[capacity];
+        this.mins = new short[capacity];
+        this.maxs = new short[capacity];
+        this.approved = new int[capacity];
+    }
+
+    void add(int period, long sum, int count, int min, int max, int approvedCount) {
+        periods[size] = period;
+        sums[size] = sum;
+        counts[size] = count;
+        mins[size] = (short) min;
+        maxs[size] = (short) max;
+        approved[size] = approvedCount;
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return whether the rows are months, years or seasons
+     */
+    public Granularity granularity() {
+        return granularity;
+    }
+
+    /**
+     * @param index index of the row
+     * @return the period of the row, e.g. 2000-01, 2000 or 2000 DJF
+     */
+    public String period(int index) {
+        checkIndex(index);
+        return appendPeriod(new StringBuilder(8), periods[index]).toString();
+    }
+
+    /**
+     * @param index index of the row
+     * @return year of the period, for a winter the year of its January
+     */
+    public int year(int index) {
+        checkIndex(index);
+        switch (granularity) {
+            case MONTH:
+                return Math.floorDiv(periods[index], 12);
+            case SEASON:
+                return Math.floorDiv(periods[index], 4);
+            default:
+                return periods[index];
+        }
+    }
+
+    /**
+     * @param index index of the row
+     * @return unrounded average temperature in degrees Celsius
+     */
+    public double average(int index) {
+        checkIndex(index);
+        return sums[index] / (counts[index] * 10.0);
+    }
+
+    /**
+     * @param index index of the row
+     * @return lowest temperature in degrees Celsius
+     */
+    public double min(int index) {
+        checkIndex(index);
+        return mins[index] / 10.0;
+    }
+
+    /**
+     * @param index index of the row
+     * @return highest temperature in degrees Celsius
+     */
+    public double max(int index) {
+        checkIndex(index);
+        return maxs[index] / 10.0;
+    }
+
+    /**
+     * @param index index of the row
+     * @return unrounded percentage of approved readings
+     */
+    public double approvedPercentage(int index) {
+        checkIndex(index);
+        return approved[index] * 100.0 / counts[index];
+    }
+
+    /**
+     * @param index index of the row
+     * @return number of readings in the period
+     */
+    public int count(int index) {
+        checkIndex(index);
+        return counts[index];
+    }
+
+    /**
+     * Example: 2000-01 average temperature: 0.42 (min -8.3, max 6.1) degrees Celsius, approved values: 32.86 %
+     */
+    @Override
+    public String format(int index) {
+        checkIndex(index);
+        StringBuilder row = new StringBuilder(96);
+        appendPeriod(row, periods[index]).append(" average temperature: ");
+        ResultFormat.appendHundredths(row, ResultFormat.roundedHundredths(sums[index], counts[index] * 10L)).append(" (min ");
+        ResultFormat.appendHundredths(row, mins[index] * 10L).append(", max ");
+        ResultFormat.appendHundredths(row, maxs[index] * 10L).append(") degrees Celsius, approved values: ");
+        ResultFormat.appendHundredths(row, ResultFormat.roundedHundredths(approved[index] * 100L, counts[index]));
+        return row.append(" %").toString();
+    }
+
+    private StringBuilder appendPeriod(StringBuilder out, int period) {
+        switch (granularity) {
+            case MONTH:
+                int month = Math.floorMod(period, 12) + 1;
+                return out.append(Math.floorDiv(period, 12)).append(month < 10 ? "-0" : "-").append(month);
+            case SEASON:
+                return out.append(Math.floorDiv(period, 4)).append(' ').append(SEASONS[Math.floorMod(period, 4)]);
+            default:
+                return out.append(period);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+}
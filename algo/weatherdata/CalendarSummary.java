@@ -0,0 +1,185 @@
+package algo.weatherdata;
+
+import java.time.LocalDate;
+
+/**
+ * Per-month and per-year aggregates, built from the daily summary when data is
+ * published. Days are rolled up into months and months into years, so a rollup
+ * over any number of years visits one entry per row, and a season three months.
+ */
+class CalendarSummary {
+
+    //Months as year * 12 + month - 1
+    private final Level months;
+    private final Level years;
+
+    private CalendarSummary(Level months, Level years) {
+        this.months = months;
+        this.years = years;
+    }
+
+    /**
+     * Roll up a daily summary into months and years.
+     * @param daily the daily summary
+     * @return aggregates for every month and year from the first to the last day
+     */
+    static CalendarSummary build(DailySummary daily) {
+        if (daily.days() == 0) {
+            return new CalendarSummary(new Level(0, 0), new Level(0, 0));
+        }
+        LocalDate first = LocalDate.ofEpochDay(daily.firstDay()); //O(1)
+        LocalDate last = LocalDate.ofEpochDay(daily.lastDay()); //O(1)
+        int firstMonth = first.getYear() * 12 + first.getMonthValue() - 1; //O(1)
+        int lastMonth = last.getYear() * 12 + last.getMonthValue() - 1; //O(1)
+        Level months = new Level(firstMonth, lastMonth - firstMonth + 1); //O(m) m = months in the data
+        Level years = new Level(first.getYear(), last.getYear() - first.getYear() + 1); //O(y) y = years in the data
+
+        LocalDate monthStart = first.withDayOfMonth(1); //O(1)
+        for (int month = firstMonth; month <= lastMonth; month++) { //O(m)
+            LocalDate nextMonth = monthStart.plusMonths(1);
+            int from = (int) Math.max(monthStart.toEpochDay(), daily.firstDay());
+            int to = (int) Math.min(nextMonth.toEpochDay() - 1, daily.lastDay());
+            for (int day = from; day <= to; day++) { //O(d) d = days in the data, over all months
+                int count = daily.count(day);
+                if (count > 0) {
+                    months.add(month, daily.sum(day), count, daily.min(day), daily.max(day), daily.approvedCount(day));
+                }
+            }
+            months.addTo(years, month, monthStart.getYear()); //O(1)
+            monthStart = nextMonth;
+        }
+        return new CalendarSummary(months, years);
+    }
+
+    /**
+     * @param fromMonth first month, as year * 12 + month - 1
+     * @param toMonth last month, inclusive
+     * @return statistics for every month with readings in the period
+     */
+    CalendarStatistics months(long fromMonth, long toMonth) {
+        int from = months.clampFirst(fromMonth, 0); //O(1)
+        int to = months.clampLast(toMonth, 0); //O(1)
+        CalendarStatistics result = new CalendarStatistics(CalendarStatistics.Granularity.MONTH, Math.max(0, to - from + 1));
+        for (int month = from; month <= to; month++) { //O(m) m = months in the period
+            months.addTo(result, month, month);
+        }
+        return result;
+    }
+
+    /**
+     * @param fromYear first year
+     * @param toYear last year, inclusive
+     * @return statistics for every year with readings in the period
+     */
+    CalendarStatistics years(long fromYear, long toYear) {
+        int from = years.clampFirst(fromYear, 0); //O(1)
+        int to = years.clampLast(toYear, 0); //O(1)
+        CalendarStatistics result = new CalendarStatistics(CalendarStatistics.Granularity.YEAR, Math.max(0, to - from + 1));
+        for (int year = from; year <= to; year++) { //O(y) y = years in the period
+            years.addTo(result, year, year);
+        }
+        return result;
+    }
+
+    /**
+     * @param fromYear year of the first winter
+     * @param toYear year of the last autumn, inclusive
+     * @return statistics for every season with readings in the period
+     */
+    CalendarStatistics seasons(long fromYear, long toYear) {
+        //Winter of a year starts in December of the year before, one year after the last month is enough
+        int from = years.clampFirst(fromYear, 1); //O(1)
+        int to = years.clampLast(toYear, 1); //O(1)
+        CalendarStatistics result = new CalendarStatistics(CalendarStatistics.Granularity.SEASON, Math.max(0, (to - from + 1) * 4));
+        Level season = new Level(0, 1); //O(1)
+        for (int year = from; year <= to; year++) { //O(y) y = years in the period
+            for (int quarter = 0; quarter < 4; quarter++) { //O(1)
+                season.clear(0);
+                int firstMonth = year * 12 + quarter * 3 - 1; //December of the year before for the winter
+                for (int month = firstMonth; month < firstMonth + 3; month++) { //O(1)
+                    months.addTo(season, month, 0);
+                }
+                season.addTo(result, 0, year * 4 + quarter);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Aggregates for a range of consecutive months or years.
+     */
+    private static class Level {
+
+        //Month or year of index 0 in the arrays
+        private final int first;
+        //Sum of temperatures in tenths of a degree
+        private final long[] sums;
+        private final int[] counts;
+        //Lowest and highest temperature in tenths of a degree
+        private final short[] mins;
+        private final short[] maxs;
+        private final int[] approved;
+
+        Level(int first, int length) {
+            this.first = first;
+            this.sums = new long[length];
+            this.counts = new int[length];
+            this.mins = new short[length];
+            this.maxs = new short[length];
+            this.approved = new int[length];
+        }
+
+        int last() {
+            return first + counts.length - 1;
+        }
+
+        //First period to visit, clamped as a long so that far off periods do not overflow,
+        //after the last period plus extra when the range starts later
+        int clampFirst(long period, int extra) {
+            return (int) Math.min(Math.max(period, first), last() + extra + 1L);
+        }
+
+        //Last period to visit, plus extra periods after the last one, before the first
+        //period when the range ends earlier
+        int clampLast(long period, int extra) {
+            return (int) Math.max(Math.min(period, last() + (long) extra), first - 1L);
+        }
+
+        //Add readings to a period that is covered by the arrays
+        void add(int period, long sum, int count, int min, int max, int approvedCount) {
+            int at = period - first;
+            if (counts[at] == 0 || min < mins[at]) {
+                mins[at] = (short) min;
+            }
+            if (counts[at] == 0 || max > maxs[at]) {
+                maxs[at] = (short) max;
+            }
+            sums[at] += sum;
+            counts[at] += count;
+            approved[at] += approvedCount;
+        }
+
+        void clear(int period) {
+            int at = period - first;
+            sums[at] = 0;
+            counts[at] = 0;
+            approved[at] = 0;
+        }
+
+        //Add the readings of a period, if there are any, to a period of another level
+        void addTo(Level target, int period, int targetPeriod) {
+            int at = period - first;
+            if (at >= 0 && at < counts.length && counts[at] > 0) {
+                target.add(targetPeriod, sums[at], counts[at], mins[at], maxs[at], approved[at]);
+            }
+        }
+
+        //Add the readings of a period, if there are any, as a row of a result
+        void addTo(CalendarStatistics result, int period, int resultPeriod) {
+            int at = period - first;
+            if (at >= 0 && at < counts.length && counts[at] > 0) {
+                result.add(resultPeriod, sums[at], counts[at], mins[at], maxs[at], approved[at]);
+            }
+        }
+    }
+}
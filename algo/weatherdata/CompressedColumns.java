@@ -0,0 +1,236 @@
+package algo.weatherdata;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Read only readings encoded in blocks of {@value #BLOCK_SIZE}, to keep the history
+ * of many stations in memory at once. Within a block the time of a reading is
+ * stored as the change of the step from the reading before (delta of delta), which
+ * is 0 for hourly readings, and the temperature as the change from the reading
+ * before. Both are zigzag encoded as variable length integers, so a typical reading
+ * takes two bytes and its approved bit instead of seven bytes.
+ * <p>
+ * Each block has a header with its first reading. Searches by date and totals
+ * over a range of readings use a {@link ZoneMap} over the same blocks and only
+ * decode the blocks at the ends of the range. Reading a single value decodes its
+ * whole block. The last few decoded blocks are kept in a small cache shared by all
+ * threads, so that walking the readings in order decodes every block once.
+ */
+final class CompressedColumns implements WeatherDataColumns, ReadingSums {
+
+    //Same blocks as the zone map, so that its edge blocks are decoded once
+    static final int BLOCK_SIZE = ZoneMap.BLOCK_SIZE;
+    private static final int BLOCK_SHIFT = 10;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    //Decoded blocks kept at once, a power of two
+    private static final int CACHED_BLOCKS = 8;
+
+    private final int size;
+    //Every reading of a block after the first: time delta of delta, then temperature delta
+    private final byte[] encoded;
+    //Start of each block in encoded
+    private final int[] offsets;
+    //Time of the first reading of each block, as hours since 1970-01-01T00:00 UTC
+    private final long[] firstHours;
+    //Temperature of the first reading of each block in tenths of a degree
+    private final short[] firstTemperatures;
+    //Packed bit set, bit i is set for readings with quality code G
+    private final int[] approved;
+    //Date, temperature sum and approved count of each block
+    private final ZoneMap zones;
+    //Recently decoded blocks, block number modulo CACHED_BLOCKS picks the slot
+    private final AtomicReferenceArray<Block> decoded = new AtomicReferenceArray<>(CACHED_BLOCKS);
+
+    private CompressedColumns(int size, byte[] encoded, int[] offsets, long[] firstHours, short[] firstTemperatures,
+            int[] approved) {
+        this.size = size;
+        this.encoded = encoded;
+        this.offsets = offsets;
+        this.firstHours = firstHours;
+        this.firstTemperatures = firstTemperatures;
+        this.approved = approved;
+        this.zones = ZoneMap.build(this); //O(n), decodes each block once
+    }
+
+    /**
+     * Encode readings.
+     * @param data readings to encode, not changed while they are encoded
+     * @return the encoded readings
+     */
+    static CompressedColumns encode(WeatherDataColumns data) {
+        int size = data.size(); //O(1)
+        int blocks = (size + BLOCK_MASK) >>> BLOCK_SHIFT; //O(1)
+        int[] offsets = new int[blocks];
+        long[] firstHours = new long[blocks];
+        short[] firstTemperatures = new short[blocks];
+        int[] approved = new int[(size + 31) >>> 5];
+        Writer writer = new Writer(size * 2 + 16);
+
+        for (int block = 0; block < blocks; block++) { //O(n)
+            int from = block << BLOCK_SHIFT;
+            int to = Math.min(size, from + BLOCK_SIZE);
+            offsets[block] = writer.length;
+            long time = data.epochDay(from) * 24L + data.hour(from);
+            int temperature = data.tempTenths(from);
+            firstHours[block] = time;
+            firstTemperatures[block] = (short) temperature;
+            long step = 0;
+            for (int i = from; i < to; i++) { //O(B) B = block size
+                if (i > from) {
+                    long nextTime = data.epochDay(i) * 24L + data.hour(i);
+                    int nextTemperature = data.tempTenths(i);
+                    writer.write(nextTime - time - step);
+                    writer.write(nextTemperature - temperature);
+                    step = nextTime - time;
+                    time = nextTime;
+                    temperature = nextTemperature;
+                }
+                if (data.isApproved(i)) {
+                    approved[i >>> 5] |= 1 << i;
+                }
+            }
+        }
+        return new CompressedColumns(size, Arrays.copyOf(writer.bytes, writer.length), offsets, firstHours,
+                firstTemperatures, approved); //O(n)
+    }
+
+    /**
+     * Estimate the heap used by the encoded readings.
+     * @return size in bytes of the encoded readings, headers, approved bits, zone map and decoded blocks
+     */
+    long heapBytes() {
+        return encoded.length + offsets.length * 14L + approved.length * 4L + zones.heapBytes()
+                + CACHED_BLOCKS * BLOCK_SIZE * 7L; //O(1)
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int epochDay(int index) {
+        return block(index).days[index & BLOCK_MASK];
+    }
+
+    @Override
+    public int hour(int index) {
+        return block(index).hours[index & BLOCK_MASK];
+    }
+
+    @Override
+    public int tempTenths(int index) {
+        return block(index).temperatures[index & BLOCK_MASK];
+    }
+
+    @Override
+    public boolean isApproved(int index) {
+        return (approved[index >>> 5] & (1 << index)) != 0;
+    }
+
+    @Override
+    public int firstIndexFrom(long epochDay) {
+        return zones.firstIndexFrom(epochDay); //O(log n + B) B = block size
+    }
+
+    @Override
+    public long temperatureSum(int fromIndex, int toIndex) {
+        return zones.temperatureSum(fromIndex, toIndex); //O(n / B + B)
+    }
+
+    @Override
+    public int approvedCount(int fromIndex, int toIndex) {
+        return zones.approvedCount(fromIndex, toIndex); //O(n / B + B)
+    }
+
+    //The decoded block that holds the reading, decoded first if it is not in the cache
+    private Block block(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        int number = index >>> BLOCK_SHIFT;
+        int slot = number & (CACHED_BLOCKS - 1);
+        Block block = decoded.get(slot);
+        if (block == null || block.number != number) {
+            block = decode(number); //O(B) B = block size
+            decoded.set(slot, block); //Only whole blocks are shared, so readers never see one half decoded
+        }
+        return block;
+    }
+
+    private Block decode(int number) {
+        Block block = new Block(number);
+        int length = Math.min(BLOCK_SIZE, size - (number << BLOCK_SHIFT));
+        int position = offsets[number];
+        long time = firstHours[number];
+        long step = 0;
+        int temperature = firstTemperatures[number];
+        for (int i = 0; i < length; i++) { //O(B)
+            if (i > 0) {
+                long value = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = encoded[position++];
+                    value |= (long) (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                step += (value >>> 1) ^ -(value & 1); //Undo the zigzag encoding
+                time += step;
+                value = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = encoded[position++];
+                    value |= (long) (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                temperature += (int) ((value >>> 1) ^ -(value & 1));
+            }
+            block.days[i] = (int) Math.floorDiv(time, 24);
+            block.hours[i] = (byte) Math.floorMod(time, 24);
+            block.temperatures[i] = (short) temperature;
+        }
+        return block;
+    }
+
+    /**
+     * The readings of one block, decoded. Not changed once it is in the cache.
+     */
+    private static final class Block {
+        final int number;
+        final int[] days = new int[BLOCK_SIZE];
+        final byte[] hours = new byte[BLOCK_SIZE];
+        final short[] temperatures = new short[BLOCK_SIZE];
+
+        Block(int number) {
+            this.number = number;
+        }
+    }
+
+    /**
+     * Appends zigzag encoded variable length integers to a growing byte array.
+     */
+    private static final class Writer {
+        byte[] bytes;
+        int length;
+
+        Writer(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        //Small values of either sign take one byte, seven bits per byte
+        void write(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            if (length + 10 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + 10, bytes.length * 2));
+            }
+            while ((zigzag & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            bytes[length++] = (byte) zigzag;
+        }
+    }
+}
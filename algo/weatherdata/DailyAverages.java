@@ -0,0 +1,120 @@
+package algo.weatherdata;
+
+import java.time.LocalDate;
+
+/**
+ * Average temperature for each day with readings in a period, sorted by date (ascending).
+ */
+public final class DailyAverages implements QueryResult {
+
+    private final int[] epochDays;
+    //Sum of temperatures in tenths of a degree
+    private final long[] sums;
+    private final int[] counts;
+    private int size;
+
+    DailyAverages(int capacity) {
+        this.epochDays = new int[capacity];
+        this.sums = new long[capacity];
+        this.counts = new int[capacity];
+    }
+
+    void add(int epochDay, long sum, int count) {
+        epochDays[size] = epochDay;
+        sums[size] = sum;
+        counts[size] = count;
+        size++;
+    }
+
+    /**
+     * Returns the rows of a period within the period of this result.
+     * @param fromDay first day, as days since 1970-01-01
+     * @param toDay last day, inclusive
+     * @return a new result with the rows from fromDay to toDay
+     */
+    DailyAverages slice(long fromDay, long toDay) {
+        int low = 0, high = size; //O(1)
+        while (low < high) { //O(log d) d = rows in this result, which are sorted by date
+            int middle = (low + high) >>> 1;
+            if (epochDays[middle] < fromDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int end = low; //O(1)
+        while (end < size && epochDays[end] <= toDay) { //O(r) r = rows in the slice
+            end++;
+        }
+        DailyAverages slice = new DailyAverages(end - low); //O(r)
+        System.arraycopy(epochDays, low, slice.epochDays, 0, end - low);
+        System.arraycopy(sums, low, slice.sums, 0, end - low);
+        System.arraycopy(counts, low, slice.counts, 0, end - low);
+        slice.size = end - low;
+        return slice;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index index of the row
+     * @return the date of the row
+     */
+    public LocalDate date(int index) {
+        return LocalDate.ofEpochDay(epochDay(index));
+    }
+
+    /**
+     * @param index index of the row
+     * @return the date of the row as days since 1970-01-01
+     */
+    public int epochDay(int index) {
+        checkIndex(index);
+        return epochDays[index];
+    }
+
+    /**
+     * @param index index of the row
+     * @return unrounded average temperature in degrees Celsius
+     */
+    public double average(int index) {
+        checkIndex(index);
+        return sums[index] / (counts[index] * 10.0);
+    }
+
+    //Average rounded to two decimals, the value shown when the row is formatted
+    long averageHundredths(int index) {
+        checkIndex(index);
+        return ResultFormat.roundedHundredths(sums[index], counts[index] * 10L);
+    }
+
+    /**
+     * @param index index of the row
+     * @return number of readings the average is taken over
+     */
+    public int count(int index) {
+        checkIndex(index);
+        return counts[index];
+    }
+
+    /**
+     * Example: 2000-01-01 average temperature: 0.42 degrees Celsius
+     */
+    @Override
+    public String format(int index) {
+        checkIndex(index);
+        StringBuilder row = new StringBuilder(56);
+        ResultFormat.appendDate(row, epochDays[index]).append(" average temperature: ");
+        ResultFormat.appendHundredths(row, averageHundredths(index));
+        return row.append(" degrees Celsius").toString();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package algo.weatherdata;
+
+import java.time.LocalDate;
+
+/**
+ * Number of missing readings for each day with readings in a period, assuming
+ * there should be 24 readings each day (once every hour). Rows are sorted by
+ * number of missing readings (descending), and by date within the same number.
+ */
+public final class DailyMissingValues implements QueryResult {
+
+    //Readings expected each day
+    static final int READINGS_PER_DAY = 24;
+
+    private final int[] epochDays;
+    private final int[] missing;
+    private int size;
+
+    DailyMissingValues(int capacity) {
+        this.epochDays = new int[capacity];
+        this.missing = new int[capacity];
+    }
+
+    void add(int epochDay, int missingCount) {
+        epochDays[size] = epochDay;
+        missing[size] = missingCount;
+        size++;
+    }
+
+    /**
+     * Sort rows added in date order by number of missing readings, most missing
+     * first, keeping the date order among rows with the same number. The numbers
+     * fall in a small range, at most 0 to 24, so the rows are counted per number
+     * and then moved to their place in one pass (counting sort), without comparing
+     * rows or formatting them first.
+     */
+    void rankByMissing() {
+        if (size == 0) {
+            return; //O(1)
+        }
+        int most = missing[0], fewest = missing[0];
+        for (int i = 1; i < size; i++) { //O(d) d = rows
+            most = Math.max(most, missing[i]);
+            fewest = Math.min(fewest, missing[i]);
+        }
+        //Start of each number in the sorted rows, the most missing first
+        int[] starts = new int[most - fewest + 2];
+        for (int i = 0; i < size; i++) { //O(d)
+            starts[most - missing[i] + 1]++;
+        }
+        for (int bucket = 1; bucket < starts.length; bucket++) { //O(1), at most 26 buckets
+            starts[bucket] += starts[bucket - 1];
+        }
+        int[] rankedDays = new int[size];
+        int[] rankedMissing = new int[size];
+        for (int i = 0; i < size; i++) { //O(d), in date order so that each bucket stays in date order
+            int at = starts[most - missing[i]]++;
+            rankedDays[at] = epochDays[i];
+            rankedMissing[at] = missing[i];
+        }
+        System.arraycopy(rankedDays, 0, epochDays, 0, size); //O(d)
+        System.arraycopy(rankedMissing, 0, missing, 0, size); //O(d)
+    }
+
+    /**
+     * Returns the rows of a period within the period of this result, in the same order.
+     * @param fromDay first day, as days since 1970-01-01
+     * @param toDay last day, inclusive
+     * @return a new result with the rows from fromDay to toDay
+     */
+    DailyMissingValues slice(long fromDay, long toDay) {
+        DailyMissingValues slice = new DailyMissingValues(size); //O(d) d = rows in this result
+        for (int i = 0; i < size; i++) { //O(d)
+            if (epochDays[i] >= fromDay && epochDays[i] <= toDay) {
+                slice.add(epochDays[i], missing[i]);
+            }
+        }
+        return slice;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index index of the row
+     * @return the date of the row
+     */
+    public LocalDate date(int index) {
+        return LocalDate.ofEpochDay(epochDay(index));
+    }
+
+    /**
+     * @param index index of the row
+     * @return the date of the row as days since 1970-01-01
+     */
+    public int epochDay(int index) {
+        checkIndex(index);
+        return epochDays[index];
+    }
+
+    /**
+     * @param index index of the row
+     * @return number of missing readings that day
+     */
+    public int missing(int index) {
+        checkIndex(index);
+        return missing[index];
+    }
+
+    /**
+     * Example: 2000-01-02 missing 1 values
+     */
+    @Override
+    public String format(int index) {
+        checkIndex(index);
+        StringBuilder row = new StringBuilder(32);
+        ResultFormat.appendDate(row, epochDays[index]).append(" missing ").append(missing[index]);
+        return row.append(" values").toString();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+}
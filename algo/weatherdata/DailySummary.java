@@ -0,0 +1,279 @@
+package algo.weatherdata;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Per-day aggregates of weather readings, built when data is loaded and extended
+ * in place when newer readings are appended. Each array is indexed by the number
+ * of days since the first day in the data, so a query over a date range only
+ * visits the days in the range and never the individual readings.
+ * <p>
+ * Large data is aggregated in parallel: the readings are split into index ranges
+ * that are summarised on the common ForkJoinPool, and the partial summaries are
+ * merged by date.
+ */
+class DailySummary {
+
+    //Fewest readings worth summarising on a worker of its own
+    private static final int MIN_CHUNK_SIZE = 16 * 1024;
+
+    //Epoch day of index 0 in the arrays
+    private int firstDay;
+    //Number of days in use, from firstDay to the last day with readings
+    private int days;
+    //Sum of temperatures in tenths of a degree
+    private int[] sums;
+    private int[] counts;
+    //Lowest and highest temperature in tenths of a degree
+    private short[] mins;
+    private short[] maxs;
+    private int[] approvedCounts;
+
+    private DailySummary(int firstDay, int capacity) {
+        this.firstDay = firstDay;
+        this.sums = new int[capacity];
+        this.counts = new int[capacity];
+        this.mins = new short[capacity];
+        this.maxs = new short[capacity];
+        this.approvedCounts = new int[capacity];
+    }
+
+    /**
+     * Aggregate all readings per day on the calling thread.
+     * @param data readings to aggregate, in any order
+     * @return summary covering every day from the first to the last reading
+     */
+    static DailySummary build(WeatherDataColumns data) {
+        return build(data, 0, data.size()); //O(n)
+    }
+
+    /**
+     * Aggregate all readings per day, in parallel if there are at least
+     * parallelThreshold readings.
+     * @param data readings to aggregate, in any order
+     * @param parallelThreshold fewest readings to aggregate in parallel
+     * @return summary covering every day from the first to the last reading
+     */
+    static DailySummary build(WeatherDataColumns data, int parallelThreshold) {
+        int size = data.size(); //O(1)
+        int parallelism = ForkJoinPool.getCommonPoolParallelism(); //O(1)
+        if (size < parallelThreshold || size < 2 * MIN_CHUNK_SIZE || parallelism < 2) {
+            return build(data); //O(n)
+        }
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, size / (parallelism * 4)); //A few chunks per worker evens out the load
+        return new PartialSummary(data, 0, size, chunkSize).invoke(); //O(n / p + d log p) p = number of cores
+    }
+
+    /**
+     * Aggregate a range of readings per day.
+     * @param data readings to aggregate, in any order
+     * @param fromIndex first reading, inclusive
+     * @param toIndex last reading, exclusive
+     * @return summary covering every day from the first to the last reading in the range
+     */
+    private static DailySummary build(WeatherDataColumns data, int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return new DailySummary(0, 0);
+        }
+        int first = Integer.MAX_VALUE, last = Integer.MIN_VALUE; //O(1)
+        for (int i = fromIndex; i < toIndex; i++) { //O(k) k = readings in range
+            first = Math.min(first, data.epochDay(i));
+            last = Math.max(last, data.epochDay(i));
+        }
+
+        DailySummary summary = new DailySummary(first, last - first + 1); //O(d) d = days in the range
+        summary.days = last - first + 1;
+        summary.addAll(data, fromIndex, toIndex); //O(k)
+        return summary;
+    }
+
+    /**
+     * Combine two summaries of different readings into one.
+     * @param other summary to add, not changed
+     * @return this summary, grown to cover the days of both
+     */
+    private DailySummary merge(DailySummary other) {
+        if (other.days == 0) {
+            return this;
+        }
+        cover(other.firstDay); //O(d) d = days in both, when growing
+        cover(other.lastDay()); //O(d)
+        int offset = other.firstDay - firstDay; //O(1)
+        for (int day = 0; day < other.days; day++) { //O(d) d = days in other, in date order
+            int count = other.counts[day];
+            if (count == 0) {
+                continue;
+            }
+            int at = day + offset;
+            if (counts[at] == 0 || other.mins[day] < mins[at]) {
+                mins[at] = other.mins[day];
+            }
+            if (counts[at] == 0 || other.maxs[day] > maxs[at]) {
+                maxs[at] = other.maxs[day];
+            }
+            sums[at] += other.sums[day];
+            counts[at] += count;
+            approvedCounts[at] += other.approvedCounts[day];
+        }
+        return this;
+    }
+
+    /**
+     * Add readings that were appended to the data after this summary was built.
+     * @param data all readings, including the ones already in the summary
+     * @param fromIndex index of the first reading that is not in the summary yet
+     */
+    void append(WeatherDataColumns data, int fromIndex) {
+        for (int i = fromIndex; i < data.size(); i++) { //O(k) k = appended readings
+            cover(data.epochDay(i)); //O(1) amortized for newer days
+        }
+        addAll(data, fromIndex, data.size()); //O(k)
+    }
+
+    /**
+     * Returns a copy of the summary as it is now, which is not changed by later appends.
+     * The arrays are copied because appends update the last day in place.
+     * @return a copy with the current days
+     */
+    DailySummary freeze() {
+        DailySummary copy = new DailySummary(firstDay, 0); //O(1)
+        copy.days = days;
+        copy.sums = Arrays.copyOf(sums, days); //O(d) d = days in the data
+        copy.counts = Arrays.copyOf(counts, days);
+        copy.mins = Arrays.copyOf(mins, days);
+        copy.maxs = Arrays.copyOf(maxs, days);
+        copy.approvedCounts = Arrays.copyOf(approvedCounts, days);
+        return copy;
+    }
+
+    //Aggregate readings into days that are already covered by the arrays
+    private void addAll(WeatherDataColumns data, int fromIndex, int toIndex) {
+        for (int i = fromIndex; i < toIndex; i++) { //O(k)
+            int day = data.epochDay(i) - firstDay;
+            int temp = data.tempTenths(i);
+            if (counts[day] == 0 || temp < mins[day]) {
+                mins[day] = (short) temp;
+            }
+            if (counts[day] == 0 || temp > maxs[day]) {
+                maxs[day] = (short) temp;
+            }
+            sums[day] += temp;
+            counts[day]++;
+            if (data.isApproved(i)) {
+                approvedCounts[day]++;
+            }
+        }
+    }
+
+    /**
+     * Make sure the arrays cover a day, growing them at the end or the start.
+     * @param epochDay the day to cover
+     */
+    private void cover(int epochDay) {
+        if (days == 0) {
+            firstDay = epochDay;
+        }
+        int shift = Math.max(0, firstDay - epochDay); //Days to add before the current first day
+        int newDays = Math.max(days + shift, epochDay - firstDay + shift + 1);
+        if (shift == 0 && newDays <= sums.length) {
+            days = newDays;
+            return;
+        }
+        int capacity = shift == 0 ? Math.max(newDays, sums.length * 2) : newDays;
+        sums = grow(sums, shift, capacity);
+        counts = grow(counts, shift, capacity);
+        approvedCounts = grow(approvedCounts, shift, capacity);
+        mins = grow(mins, shift, capacity);
+        maxs = grow(maxs, shift, capacity);
+        firstDay -= shift;
+        days = newDays;
+    }
+
+    private int[] grow(int[] values, int shift, int capacity) {
+        int[] grown = new int[capacity];
+        System.arraycopy(values, 0, grown, shift, days);
+        return grown;
+    }
+
+    private short[] grow(short[] values, int shift, int capacity) {
+        short[] grown = new short[capacity];
+        System.arraycopy(values, 0, grown, shift, days);
+        return grown;
+    }
+
+    /**
+     * @return epoch day of the first day with readings, only valid if {@link #days()} is not 0
+     */
+    int firstDay() {
+        return firstDay;
+    }
+
+    /**
+     * @return epoch day of the last day with readings, only valid if {@link #days()} is not 0
+     */
+    int lastDay() {
+        return firstDay + days - 1;
+    }
+
+    /**
+     * @return number of days from the first to the last day with readings
+     */
+    int days() {
+        return days;
+    }
+
+    int sum(int epochDay) {
+        return sums[epochDay - firstDay];
+    }
+
+    int count(int epochDay) {
+        return counts[epochDay - firstDay];
+    }
+
+    int min(int epochDay) {
+        return mins[epochDay - firstDay];
+    }
+
+    int max(int epochDay) {
+        return maxs[epochDay - firstDay];
+    }
+
+    int approvedCount(int epochDay) {
+        return approvedCounts[epochDay - firstDay];
+    }
+
+    /**
+     * Summarises a range of readings, splitting it in halves on the pool until the
+     * halves are small enough.
+     */
+    private static class PartialSummary extends RecursiveTask<DailySummary> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient WeatherDataColumns data;
+        private final int fromIndex;
+        private final int toIndex;
+        private final int chunkSize;
+
+        PartialSummary(WeatherDataColumns data, int fromIndex, int toIndex, int chunkSize) {
+            this.data = data;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected DailySummary compute() {
+            if (toIndex - fromIndex <= chunkSize) {
+                return build(data, fromIndex, toIndex); //O(k) k = readings in chunk
+            }
+            int middle = (fromIndex + toIndex) >>> 1;
+            PartialSummary later = new PartialSummary(data, middle, toIndex, chunkSize);
+            later.fork();
+            DailySummary earlier = new PartialSummary(data, fromIndex, middle, chunkSize).compute();
+            return earlier.merge(later.join()); //O(d) d = days in both halves
+        }
+    }
+}
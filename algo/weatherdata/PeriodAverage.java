@@ -0,0 +1,66 @@
+package algo.weatherdata;
+
+import java.time.LocalDate;
+
+/**
+ * Average temperature of all readings in a period. The result has a single row,
+ * or no rows if there are no readings in the period.
+ */
+public final class PeriodAverage implements QueryResult {
+
+    private final LocalDate dateFrom;
+    private final LocalDate dateTo;
+    //Sum of temperatures in tenths of a degree
+    private final long sum;
+    private final int count;
+
+    PeriodAverage(LocalDate dateFrom, LocalDate dateTo, long sum, int count) {
+        this.dateFrom = dateFrom;
+        this.dateTo = dateTo;
+        this.sum = sum;
+        this.count = count;
+    }
+
+    @Override
+    public int size() {
+        return count > 0 ? 1 : 0;
+    }
+
+    /**
+     * @return unrounded average temperature in degrees Celsius, NaN if there are no readings
+     */
+    public double average() {
+        return count > 0 ? sum / (count * 10.0) : Double.NaN;
+    }
+
+    //Sum of temperatures in tenths of a degree, e.g. to combine periods or stations
+    long sum() {
+        return sum;
+    }
+
+    /**
+     * @return number of readings in the period
+     */
+    public int count() {
+        return count;
+    }
+
+    //Average rounded to two decimals, only valid if there are readings
+    long averageHundredths() {
+        return ResultFormat.roundedHundredths(sum, count * 10L);
+    }
+
+    /**
+     * Example: Average temperature between 2000-01-01 and 2000-01-03: 1.8 degrees Celsius
+     */
+    @Override
+    public String format(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+        StringBuilder row = new StringBuilder(80);
+        row.append("Average temperature between ").append(dateFrom).append(" and ").append(dateTo).append(": ");
+        ResultFormat.appendHundredths(row, averageHundredths());
+        return row.append(" degrees Celsius").toString();
+    }
+}
@@ -0,0 +1,84 @@
+package algo.weatherdata;
+
+import java.util.Arrays;
+
+/**
+ * Cumulative sums over the readings, built when data is loaded and extended in
+ * place when readings are appended. Entry i holds the total of readings 0 to
+ * i - 1, so the total for any range of readings is the difference of two entries.
+ * The number of readings in a range is the difference of its indexes and needs
+ * no array of its own.
+ */
+class PrefixSums implements ReadingSums {
+
+    //Sum of temperatures in tenths of a degree
+    private long[] temperatures;
+    private int[] approved;
+    //Number of readings covered, entries 0 to size are in use
+    private int size;
+
+    private PrefixSums(int capacity) {
+        this.temperatures = new long[capacity + 1];
+        this.approved = new int[capacity + 1];
+    }
+
+    private PrefixSums(long[] temperatures, int[] approved, int size) {
+        this.temperatures = temperatures;
+        this.approved = approved;
+        this.size = size;
+    }
+
+    /**
+     * Accumulate all readings.
+     * @param data readings to accumulate
+     * @return prefix sums over the readings
+     */
+    static PrefixSums build(WeatherDataColumns data) {
+        PrefixSums sums = new PrefixSums(data.size()); //O(n)
+        sums.append(data, 0); //O(n)
+        return sums;
+    }
+
+    /**
+     * Accumulate readings that were appended to the data after these sums were built.
+     * @param data all readings, including the ones already accumulated
+     * @param fromIndex index of the first reading that is not accumulated yet, 
+     *        must be the number of readings accumulated so far
+     */
+    void append(WeatherDataColumns data, int fromIndex) {
+        if (fromIndex != size) {
+            throw new IllegalArgumentException("Expected readings from index " + size + ", got " + fromIndex);
+        }
+        int newSize = data.size(); //O(1)
+        if (newSize + 1 > temperatures.length) { //O(n) when growing
+            int capacity = Math.max(newSize + 1, temperatures.length * 2);
+            temperatures = Arrays.copyOf(temperatures, capacity);
+            approved = Arrays.copyOf(approved, capacity);
+        }
+        for (int i = fromIndex; i < newSize; i++) { //O(k) k = appended readings
+            temperatures[i + 1] = temperatures[i] + data.tempTenths(i);
+            approved[i + 1] = approved[i] + (data.isApproved(i) ? 1 : 0);
+        }
+        size = newSize; //O(1)
+    }
+
+    /**
+     * Returns a copy of the sums as they are now. The copy shares the arrays, which
+     * is safe because appends only write past the end of the copy, and move to new
+     * arrays when they grow. The copy must not be appended to.
+     * @return a copy covering the current readings
+     */
+    PrefixSums freeze() {
+        return new PrefixSums(temperatures, approved, size); //O(1)
+    }
+
+    @Override
+    public long temperatureSum(int fromIndex, int toIndex) {
+        return temperatures[toIndex] - temperatures[fromIndex];
+    }
+
+    @Override
+    public int approvedCount(int fromIndex, int toIndex) {
+        return approved[toIndex] - approved[fromIndex];
+    }
+}
@@ -0,0 +1,359 @@
+package algo.weatherdata;
+
+import java.io.Closeable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs queries from many threads, e.g. one virtual thread per HTTP request, in
+ * batches. Requests that arrive while the previous batch is being planned, or
+ * within an optional window after the first request of a batch, are answered
+ * together:
+ * <ul>
+ * <li>per-day queries of the same kind whose periods overlap or touch are merged
+ * into one query over the joined period, and every caller gets its own slice</li>
+ * <li>identical period queries are run once and the result is shared</li>
+ * </ul>
+ * A single worker thread collects the batches and splits them into such groups.
+ * The groups themselves run in parallel on the common ForkJoinPool. A group is
+ * queried through the cache when one of its requests asks for the whole joined
+ * period. Otherwise the joined period is queried without the cache, so the cache
+ * only holds periods that callers asked for. Callers block until their group has run, which is cheap on
+ * virtual threads. A query that fails, with an exception or an error, fails the
+ * callers of its group and nothing else.
+ */
+public class QueryBatcher implements Closeable {
+
+    private final WeatherDataHandler handler;
+    private final long windowNanos;
+
+    //Requests waiting for the next batch, guarded by the lock on pending
+    private final List<Request<?>> pending = new ArrayList<>();
+    private boolean closed;
+    private long requests;
+    private long batches;
+    private long queries;
+
+    /**
+     * Create a batcher and start its worker thread.
+     * @param handler handler to run the queries on
+     * @param windowMicros time to wait for more requests after the first one of a
+     *        batch, 0 only batches requests that arrive while a batch is running
+     */
+    public QueryBatcher(WeatherDataHandler handler, long windowMicros) {
+        if (windowMicros < 0) {
+            throw new IllegalArgumentException("Window must not be negative");
+        }
+        this.handler = handler;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        Thread worker = new Thread(this::work, "weather-data-batcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Same as {@link WeatherDataHandler#dailyAverages}, run in a batch.
+     * @param dateFrom start date (YYYY-MM-DD) inclusive
+     * @param dateTo end date (YYYY-MM-DD) inclusive
+     * @return average temperature for each date, sorted by date
+     */
+    public DailyAverages dailyAverages(LocalDate dateFrom, LocalDate dateTo) {
+        return submit(QueryCache.Kind.DAILY_AVERAGES, dateFrom, dateTo);
+    }
+
+    /**
+     * Same as {@link WeatherDataHandler#dailyMissingValues}, run in a batch.
+     * @param dateFrom start date (YYYY-MM-DD) inclusive
+     * @param dateTo end date (YYYY-MM-DD) inclusive
+     * @return dates together with number of missing values for each date, sorted by number of missing values (descending)
+     */
+    public DailyMissingValues dailyMissingValues(LocalDate dateFrom, LocalDate dateTo) {
+        return submit(QueryCache.Kind.DAILY_MISSING_VALUES, dateFrom, dateTo);
+    }
+
+    /**
+     * Same as {@link WeatherDataHandler#approvedPercentage}, run in a batch.
+     * @param dateFrom start date (YYYY-MM-DD) inclusive
+     * @param dateTo end date (YYYY-MM-DD) inclusive
+     * @return number of approved and total values for the period
+     */
+    public ApprovedPercentage approvedPercentage(LocalDate dateFrom, LocalDate dateTo) {
+        return submit(QueryCache.Kind.APPROVED_PERCENTAGE, dateFrom, dateTo);
+    }
+
+    /**
+     * Same as {@link WeatherDataHandler#periodAverage}, run in a batch.
+     * @param dateFrom start date (YYYY-MM-DD) inclusive
+     * @param dateTo end date (YYYY-MM-DD) inclusive
+     * @return sum and number of values for the period
+     */
+    public PeriodAverage periodAverage(LocalDate dateFrom, LocalDate dateTo) {
+        return submit(QueryCache.Kind.PERIOD_AVERAGE, dateFrom, dateTo);
+    }
+
+    /**
+     * Stop the worker thread. Requests that are waiting are still answered.
+     */
+    @Override
+    public void close() {
+        synchronized (pending) {
+            closed = true;
+            pending.notifyAll();
+        }
+    }
+
+    /**
+     * @return number of requests answered or waiting
+     */
+    public long requests() {
+        synchronized (pending) {
+            return requests;
+        }
+    }
+
+    /**
+     * @return number of batches run
+     */
+    public long batches() {
+        synchronized (pending) {
+            return batches;
+        }
+    }
+
+    /**
+     * @return number of queries run on the handler, at most the number of requests
+     */
+    public long queries() {
+        synchronized (pending) {
+            return queries;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (pending) {
+            return "QueryBatcher[requests=" + requests + ", batches=" + batches + ", queries=" + queries + "]";
+        }
+    }
+
+    //Queue a request and wait for its batch
+    private <T extends QueryResult> T submit(QueryCache.Kind kind, LocalDate dateFrom, LocalDate dateTo) {
+        Request<T> request = new Request<>(kind, dateFrom, dateTo);
+        synchronized (pending) {
+            if (closed) {
+                throw new IllegalStateException("The batcher is closed");
+            }
+            pending.add(request);
+            requests++;
+            pending.notifyAll();
+        }
+        try {
+            return request.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    //Take all waiting requests and run them as one batch, until closed
+    private void work() {
+        while (true) {
+            List<Request<?>> batch;
+            synchronized (pending) {
+                try {
+                    while (pending.isEmpty() && !closed) {
+                        pending.wait();
+                    }
+                    if (pending.isEmpty()) {
+                        return; //Closed and nothing left to answer
+                    }
+                    long deadline = System.nanoTime() + windowNanos;
+                    for (long left = windowNanos; left > 0 && !closed; left = deadline - System.nanoTime()) {
+                        TimeUnit.NANOSECONDS.timedWait(pending, left); //Let more requests join the batch
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                batch = new ArrayList<>(pending);
+                pending.clear();
+                batches++;
+            }
+            try {
+                run(batch);
+            } catch (Throwable e) { //Keep the worker alive, and never leave a caller waiting
+                batch.forEach(request -> request.result.completeExceptionally(e));
+            }
+        }
+    }
+
+    /**
+     * Answer a batch of requests with as few queries as possible. Each query is
+     * handed to the common ForkJoinPool, so this returns before the batch is answered.
+     * @param batch requests in order of arrival
+     */
+    private void run(List<Request<?>> batch) {
+        Map<QueryCache.Kind, List<Request<?>>> byKind = new HashMap<>();
+        for (Request<?> request : batch) { //O(b) b = requests in batch
+            byKind.computeIfAbsent(request.kind, kind -> new ArrayList<>()).add(request);
+        }
+        int count = 0;
+        for (Map.Entry<QueryCache.Kind, List<Request<?>>> kind : byKind.entrySet()) {
+            List<Request<?>> requests = kind.getValue();
+            switch (kind.getKey()) {
+                case DAILY_AVERAGES:
+                case DAILY_MISSING_VALUES:
+                    count += runMerged(kind.getKey(), requests); //O(b log b)
+                    break;
+                default:
+                    count += runShared(kind.getKey(), requests); //O(b)
+            }
+        }
+        synchronized (pending) {
+            queries += count;
+        }
+    }
+
+    /**
+     * Group per-day requests whose periods overlap or touch, and run each group
+     * as one query that every request gets its slice of.
+     * @param kind DAILY_AVERAGES or DAILY_MISSING_VALUES
+     * @param requests requests of that kind
+     * @return number of queries run
+     */
+    private int runMerged(QueryCache.Kind kind, List<Request<?>> requests) {
+        requests.sort(Comparator.comparingLong((Request<?> request) -> request.fromDay)
+                .thenComparingLong(request -> request.toDay)); //O(b log b), the same periods next to each other
+        int count = 0;
+        for (int start = 0, end; start < requests.size(); start = end) { //O(b)
+            long toDay = requests.get(start).toDay;
+            for (end = start + 1; end < requests.size() && requests.get(end).fromDay <= toDay + 1; end++) {
+                toDay = Math.max(toDay, requests.get(end).toDay);
+            }
+            List<Request<?>> group = new ArrayList<>(requests.subList(start, end));
+            long groupTo = toDay;
+            ForkJoinPool.commonPool().execute(() -> answerMerged(kind, group, groupTo));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Answer a group of per-day requests with one query over their joined period.
+     * If one of the requests asks for the whole joined period, e.g. when all of them
+     * ask for the same period, the query goes through the cache like that request
+     * would on its own. Requests for the same period share one result.
+     * @param kind DAILY_AVERAGES or DAILY_MISSING_VALUES
+     * @param group requests sorted by first and last day, whose periods overlap or touch
+     * @param toDay last day of the joined period
+     */
+    private void answerMerged(QueryCache.Kind kind, List<Request<?>> group, long toDay) {
+        try {
+            Request<?> first = group.get(0);
+            Request<?> whole = null;
+            for (Request<?> request : group) { //O(g) g = requests in group
+                if (request.fromDay == first.fromDay && request.toDay == toDay) {
+                    whole = request;
+                    break;
+                }
+            }
+            QueryResult merged = whole != null
+                    ? query(kind, whole.dateFrom, whole.dateTo) //O(1) when cached, otherwise O(d) d = days in the joined period
+                    : handler.uncachedQuery(kind, first.dateFrom, LocalDate.ofEpochDay(toDay)); //O(d)
+            Request<?> previous = whole;
+            QueryResult slice = merged;
+            for (Request<?> request : group) { //O(p d) p = different periods in group
+                if (previous == null || request.fromDay != previous.fromDay || request.toDay != previous.toDay) {
+                    slice = kind == QueryCache.Kind.DAILY_AVERAGES
+                            ? ((DailyAverages) merged).slice(request.fromDay, request.toDay)
+                            : ((DailyMissingValues) merged).slice(request.fromDay, request.toDay);
+                    previous = request;
+                }
+                request.complete(slice);
+            }
+        } catch (Throwable e) {
+            group.forEach(request -> request.result.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Run requests for the same period once and share the result.
+     * @param kind APPROVED_PERCENTAGE or PERIOD_AVERAGE
+     * @param requests requests of that kind
+     * @return number of queries run
+     */
+    private int runShared(QueryCache.Kind kind, List<Request<?>> requests) {
+        Map<List<Long>, List<Request<?>>> periods = new HashMap<>();
+        for (Request<?> request : requests) { //O(b)
+            periods.computeIfAbsent(List.of(request.fromDay, request.toDay), period -> new ArrayList<>()).add(request);
+        }
+        for (List<Request<?>> group : periods.values()) { //O(b)
+            ForkJoinPool.commonPool().execute(() -> answerShared(kind, group));
+        }
+        return periods.size();
+    }
+
+    /**
+     * Answer requests for the same period with one query.
+     * @param kind APPROVED_PERCENTAGE or PERIOD_AVERAGE
+     * @param group requests with the same period
+     */
+    private void answerShared(QueryCache.Kind kind, List<Request<?>> group) {
+        try {
+            QueryResult result = query(kind, group.get(0).dateFrom, group.get(0).dateTo); //O(log n)
+            group.forEach(request -> request.complete(result));
+        } catch (Throwable e) {
+            group.forEach(request -> request.result.completeExceptionally(e));
+        }
+    }
+
+    private QueryResult query(QueryCache.Kind kind, LocalDate dateFrom, LocalDate dateTo) {
+        switch (kind) {
+            case DAILY_AVERAGES:
+                return handler.dailyAverages(dateFrom, dateTo);
+            case DAILY_MISSING_VALUES:
+                return handler.dailyMissingValues(dateFrom, dateTo);
+            case APPROVED_PERCENTAGE:
+                return handler.approvedPercentage(dateFrom, dateTo);
+            default:
+                return handler.periodAverage(dateFrom, dateTo);
+        }
+    }
+
+    /**
+     * A query waiting for its batch.
+     */
+    private static final class Request<T extends QueryResult> {
+        final QueryCache.Kind kind;
+        final LocalDate dateFrom;
+        final LocalDate dateTo;
+        final long fromDay;
+        final long toDay;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Request(QueryCache.Kind kind, LocalDate dateFrom, LocalDate dateTo) {
+            this.kind = kind;
+            this.dateFrom = dateFrom;
+            this.dateTo = dateTo;
+            this.fromDay = dateFrom.toEpochDay();
+            this.toDay = dateTo.toEpochDay();
+        }
+
+        //The result always has the type of the kind of the request
+        @SuppressWarnings("unchecked")
+        void complete(QueryResult value) {
+            result.complete((T) value);
+        }
+    }
+}
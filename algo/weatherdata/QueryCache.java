@@ -0,0 +1,240 @@
+package algo.weatherdata;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Least recently used cache of query results, keyed by query kind, date range and
+ * version of the data. The cache is bounded both by number of results and by total
+ * weight, where the weight of a result is its number of rows. A result computed
+ * from an older version of the data is never returned for a newer one, even if it
+ * is added after the data changed, and the cache should be cleared whenever data
+ * is loaded to make room for the new results.
+ * <p>
+ * Queries are computed outside the lock on the cache, which is only held to look
+ * up, add and evict entries, so a slow query never holds up other queries. A query
+ * that is asked for again while it is being computed is computed once, and the
+ * second caller waits for the first one's result.
+ */
+public class QueryCache {
+
+    /**
+     * The queries whose results can be cached.
+     */
+    enum Kind {
+        DAILY_AVERAGES,
+        DAILY_MISSING_VALUES,
+        APPROVED_PERCENTAGE,
+        PERIOD_AVERAGE,
+        MONTHLY_STATISTICS,
+        YEARLY_STATISTICS,
+        SEASONAL_STATISTICS,
+        TEMPERATURE_EXTREMES
+    }
+
+    private final int maxEntries;
+    private final long maxWeight;
+    //Access ordered, so the first entry is the least recently used.
+    //Guarded by the lock on the cache, like the counters
+    private final LinkedHashMap<Key, Entry> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Create a cache.
+     * @param maxEntries maximum number of cached results, 0 disables the cache
+     * @param maxWeight maximum total number of rows in cached results
+     */
+    public QueryCache(int maxEntries, long maxWeight) {
+        if (maxEntries < 0 || maxWeight < 0) {
+            throw new IllegalArgumentException("Cache limits must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Return the cached result for a query, computing and caching it on a miss.
+     * The query is computed without holding the lock on the cache.
+     * @param kind kind of query, decides the type of the result
+     * @param version version of the data the query runs against
+     * @param dateFrom start date of the query
+     * @param dateTo end date of the query
+     * @param query computes the result on a miss
+     * @return the cached or computed result
+     */
+    @SuppressWarnings("unchecked")
+    <T extends QueryResult> T get(Kind kind, long version, LocalDate dateFrom, LocalDate dateTo, Supplier<T> query) {
+        Key key = new Key(kind, version, dateFrom.toEpochDay(), dateTo.toEpochDay()); //O(1)
+        Entry entry;
+        boolean compute;
+        synchronized (this) {
+            entry = results.get(key); //O(1), moves the entry to most recently used
+            compute = entry == null;
+            if (compute) {
+                misses++;
+                entry = new Entry(); //O(1)
+                if (maxEntries > 0) {
+                    results.put(key, entry); //O(1), later callers wait for this one
+                    evict(); //O(e) e = evicted results
+                }
+            } else {
+                hits++;
+            }
+        }
+        if (!compute) {
+            return (T) await(entry.result); //O(1) once the result is computed
+        }
+
+        T result;
+        try {
+            result = query.get();
+        } catch (RuntimeException | Error e) {
+            entry.result.completeExceptionally(e); //Callers waiting for the entry get the same error
+            synchronized (this) {
+                results.remove(key, entry); //O(1), the next caller tries again
+            }
+            throw e;
+        }
+        entry.result.complete(result);
+        long resultWeight = weightOf(result); //O(1)
+        synchronized (this) {
+            if (results.get(key) == entry) { //Not cleared or evicted while it was computed
+                if (resultWeight <= maxWeight) { //Results heavier than the whole cache are never kept
+                    entry.weight = resultWeight;
+                    weight += resultWeight;
+                    evict(); //O(e)
+                } else {
+                    results.remove(key); //O(1)
+                }
+            }
+        }
+        return result;
+    }
+
+    //Wait for a result computed by another caller, and throw what it threw
+    private static QueryResult await(CompletableFuture<QueryResult> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Remove every cached result, e.g. after new data has been loaded.
+     * The hit and miss counters are kept.
+     */
+    public synchronized void clear() {
+        results.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return number of queries answered from the cache
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return number of queries that had to be computed
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * @return number of results removed to stay within the limits
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of cached results
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * @return total number of rows in cached results
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "QueryCache[size=" + results.size() + ", weight=" + weight + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+    //Remove least recently used results until both limits are met
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry>> oldest = results.entrySet().iterator();
+        while ((results.size() > maxEntries || weight > maxWeight) && oldest.hasNext()) {
+            weight -= oldest.next().getValue().weight; //0 while it is being computed
+            oldest.remove();
+            evictions++;
+        }
+    }
+
+    private static long weightOf(QueryResult result) {
+        return result.size() + 1L; //Empty results still take an entry
+    }
+
+    /**
+     * A cached result, or a result that is still being computed.
+     */
+    private static final class Entry {
+        final CompletableFuture<QueryResult> result = new CompletableFuture<>();
+        //Number of rows once the result is computed and counted in the cache weight
+        long weight;
+    }
+
+    /**
+     * Cache key, a query kind, the version of the data and its date range as epoch days.
+     */
+    private static final class Key {
+        private final Kind kind;
+        private final long version;
+        private final long dateFrom;
+        private final long dateTo;
+
+        Key(Kind kind, long version, long dateFrom, long dateTo) {
+            this.kind = kind;
+            this.version = version;
+            this.dateFrom = dateFrom;
+            this.dateTo = dateTo;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return kind == key.kind && version == key.version && dateFrom == key.dateFrom && dateTo == key.dateTo;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((kind.hashCode() * 31 + Long.hashCode(version)) * 31 + Long.hashCode(dateFrom)) * 31 + Long.hashCode(dateTo);
+        }
+    }
+}
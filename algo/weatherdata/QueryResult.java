@@ -0,0 +1,35 @@
+package algo.weatherdata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of a weather data query. The values are kept in their numeric form
+ * and are only turned into text when a row is formatted for presentation.
+ */
+public interface QueryResult {
+
+    /**
+     * @return number of rows in the result
+     */
+    int size();
+
+    /**
+     * Format a single row of the result for presentation.
+     * @param index index of the row, 0 to {@code size() - 1}
+     * @return the row as text
+     */
+    String format(int index);
+
+    /**
+     * Format every row of the result.
+     * @return one String per row
+     */
+    default List<String> toStrings() {
+        List<String> rows = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            rows.add(format(i));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,115 @@
+package algo.weatherdata;
+
+/**
+ * Sparse tables over the lowest and highest temperature of each day, built from
+ * the daily summary when data is published. Level j holds, for every day, the day
+ * with the lowest (or highest) temperature among the 2^j days starting there, so
+ * any range of days is covered by two overlapping entries and answered in O(1).
+ * When several days share the extreme, the earliest of them is returned.
+ */
+class RangeExtremes {
+
+    //Returned when no day in a range has readings
+    static final long NO_DAY = Long.MIN_VALUE;
+
+    //Marks days without readings, which are never an extreme
+    private static final int NO_LOW = Integer.MAX_VALUE;
+    private static final int NO_HIGH = Integer.MIN_VALUE;
+
+    //Epoch day of index 0 in the arrays
+    private final int firstDay;
+    //Lowest and highest temperature of each day in tenths of a degree
+    private final int[] lows;
+    private final int[] highs;
+    //Day index of the extreme of the 2^j days from each day, per level j
+    private final int[][] lowest;
+    private final int[][] highest;
+
+    private RangeExtremes(int firstDay, int[] lows, int[] highs) {
+        this.firstDay = firstDay;
+        this.lows = lows;
+        this.highs = highs;
+        int days = lows.length;
+        int levels = days == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(days); //O(1)
+        this.lowest = new int[levels][];
+        this.highest = new int[levels][];
+    }
+
+    /**
+     * Index the lowest and highest temperature of every day.
+     * @param daily the daily summary
+     * @return tables covering every day in the summary
+     */
+    static RangeExtremes build(DailySummary daily) {
+        int days = daily.days(); //O(1)
+        int[] lows = new int[days];
+        int[] highs = new int[days];
+        for (int day = 0; day < days; day++) { //O(d) d = days in the data
+            boolean readings = daily.count(daily.firstDay() + day) > 0;
+            lows[day] = readings ? daily.min(daily.firstDay() + day) : NO_LOW;
+            highs[day] = readings ? daily.max(daily.firstDay() + day) : NO_HIGH;
+        }
+
+        RangeExtremes extremes = new RangeExtremes(daily.firstDay(), lows, highs);
+        for (int level = 0; level < extremes.lowest.length; level++) { //O(d log d)
+            int width = 1 << level;
+            int[] low = new int[days - width + 1];
+            int[] high = new int[days - width + 1];
+            for (int day = 0; day < low.length; day++) {
+                if (level == 0) {
+                    low[day] = day;
+                    high[day] = day;
+                } else {
+                    int half = width >>> 1;
+                    low[day] = extremes.lower(extremes.lowest[level - 1][day], extremes.lowest[level - 1][day + half]);
+                    high[day] = extremes.higher(extremes.highest[level - 1][day], extremes.highest[level - 1][day + half]);
+                }
+            }
+            extremes.lowest[level] = low;
+            extremes.highest[level] = high;
+        }
+        return extremes;
+    }
+
+    /**
+     * @param fromDay first day, as days since 1970-01-01
+     * @param toDay last day, inclusive
+     * @return epoch day with the lowest temperature in the range, or NO_DAY if no day in the range has readings
+     */
+    long lowestDay(long fromDay, long toDay) {
+        long from = Math.max(fromDay - firstDay, 0); //O(1)
+        long to = Math.min(toDay - firstDay, lows.length - 1L); //O(1)
+        if (from > to) {
+            return NO_DAY;
+        }
+        int level = 31 - Integer.numberOfLeadingZeros((int) (to - from + 1)); //O(1)
+        int day = lower(lowest[level][(int) from], lowest[level][(int) to - (1 << level) + 1]); //O(1)
+        return lows[day] == NO_LOW ? NO_DAY : firstDay + day;
+    }
+
+    /**
+     * @param fromDay first day, as days since 1970-01-01
+     * @param toDay last day, inclusive
+     * @return epoch day with the highest temperature in the range, or NO_DAY if no day in the range has readings
+     */
+    long highestDay(long fromDay, long toDay) {
+        long from = Math.max(fromDay - firstDay, 0); //O(1)
+        long to = Math.min(toDay - firstDay, highs.length - 1L); //O(1)
+        if (from > to) {
+            return NO_DAY;
+        }
+        int level = 31 - Integer.numberOfLeadingZeros((int) (to - from + 1)); //O(1)
+        int day = higher(highest[level][(int) from], highest[level][(int) to - (1 << level) + 1]); //O(1)
+        return highs[day] == NO_HIGH ? NO_DAY : firstDay + day;
+    }
+
+    //Of two day indexes, the one with the lower temperature, the earlier one on a tie
+    private int lower(int day, int other) {
+        return lows[other] < lows[day] || (lows[other] == lows[day] && other < day) ? other : day;
+    }
+
+    //Of two day indexes, the one with the higher temperature, the earlier one on a tie
+    private int higher(int day, int other) {
+        return highs[other] > highs[day] || (highs[other] == highs[day] && other < day) ? other : day;
+    }
+}
@@ -0,0 +1,22 @@
+package algo.weatherdata;
+
+/**
+ * Totals over a range of readings, answered from an index instead of visiting
+ * every reading in the range.
+ */
+interface ReadingSums {
+
+    /**
+     * @param fromIndex first reading, inclusive
+     * @param toIndex last reading, exclusive
+     * @return sum of temperatures in tenths of a degree for the readings
+     */
+    long temperatureSum(int fromIndex, int toIndex);
+
+    /**
+     * @param fromIndex first reading, inclusive
+     * @param toIndex last reading, exclusive
+     * @return number of approved readings
+     */
+    int approvedCount(int fromIndex, int toIndex);
+}
@@ -0,0 +1,94 @@
+package algo.weatherdata;
+
+import java.time.LocalDate;
+
+/**
+ * Fixed point rounding and formatting shared by the query results. All values are
+ * handled as integers, so no BigDecimal or boxed number is created per row.
+ */
+final class ResultFormat {
+
+    private ResultFormat() {
+    }
+
+    /**
+     * Divide two integers and round the quotient to two decimals, half up
+     * (away from zero), the same way as {@code RoundingMode.HALF_UP}.
+     * @param numerator the dividend
+     * @param denominator the divisor, greater than 0
+     * @return the rounded quotient in hundredths
+     */
+    static long roundedHundredths(long numerator, long denominator) {
+        long scaled = numerator * 100; //O(1)
+        long quotient = scaled / denominator; //Truncated towards zero
+        long remainder = Math.abs(scaled % denominator); //O(1)
+        if (remainder * 2 >= denominator) { //Half or more of the divisor is left, round away from zero
+            quotient += scaled < 0 ? -1 : 1;
+        }
+        return quotient; //O(1)
+    }
+
+    /**
+     * Append a value in hundredths the way {@code Double.toString} prints it after
+     * rounding to two decimals: trailing zeros are dropped but at least one decimal
+     * is kept, e.g. 250 as "2.5" and -5 as "-0.05".
+     * @param out builder to append to
+     * @param hundredths the value in hundredths
+     * @return out
+     */
+    static StringBuilder appendHundredths(StringBuilder out, long hundredths) {
+        if (hundredths < 0) {
+            out.append('-');
+            hundredths = -hundredths;
+        }
+        out.append(hundredths / 100).append('.'); //O(1)
+        int fraction = (int) (hundredths % 100); //O(1)
+        if (fraction % 10 == 0) {
+            out.append(fraction / 10);
+        } else {
+            if (fraction < 10) {
+                out.append('0');
+            }
+            out.append(fraction);
+        }
+        return out;
+    }
+
+    /**
+     * Append a date as YYYY-MM-DD without creating a LocalDate.
+     * @param out builder to append to
+     * @param epochDay the date as days since 1970-01-01
+     * @return out
+     */
+    static StringBuilder appendDate(StringBuilder out, int epochDay) {
+        //Civil date from days, counting years from March so the leap day is last
+        int days = epochDay + 719468; //Days since 0000-03-01
+        int era = Math.floorDiv(days, 146097); //O(1)
+        int dayOfEra = days - era * 146097; //O(1)
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365; //O(1)
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100); //O(1)
+        int monthIndex = (5 * dayOfYear + 2) / 153; //0 = March
+        int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1; //O(1)
+        int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9; //O(1)
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0); //O(1)
+
+        if (year < 0 || year > 9999) { //LocalDate adds a sign to these years
+            return out.append(LocalDate.ofEpochDay(epochDay));
+        }
+        appendPadded(out, year, 4);
+        out.append('-');
+        appendPadded(out, month, 2);
+        out.append('-');
+        appendPadded(out, day, 2);
+        return out;
+    }
+
+    private static void appendPadded(StringBuilder out, int value, int width) {
+        for (int limit = 10, digits = 1; digits < width; limit *= 10, digits++) {
+            if (value < limit) {
+                out.append('0');
+            }
+        }
+        out.append(value);
+    }
+}
@@ -0,0 +1,139 @@
+package algo.weatherdata;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Metadata of a weather station, as given in the header of an SMHI legend file:
+ * <pre>
+ * Stationsnamn: Visby Flygplats
+ * Klimatnummer: 78400
+ * M&auml;th&ouml;jd (meter &ouml;ver marken): 2.0
+ * H&ouml;jd (meter &ouml;ver havet): 42.0
+ * Latitud (decimalgrader): 57.6614
+ * Longitud (decimalgrader): 18.3428
+ * </pre>
+ */
+public final class StationInfo {
+
+    private final int id;
+    private final String name;
+    private final double latitude;
+    private final double longitude;
+    //Meters above sea level
+    private final double elevation;
+    //Meters above ground
+    private final double measuringHeight;
+
+    /**
+     * @param id klimatnummer of the station
+     * @param name name of the station
+     * @param latitude latitude in decimal degrees
+     * @param longitude longitude in decimal degrees
+     * @param elevation meters above sea level
+     * @param measuringHeight meters above ground where the temperature is measured
+     */
+    public StationInfo(int id, String name, double latitude, double longitude, double elevation, double measuringHeight) {
+        this.id = id;
+        this.name = name;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.elevation = elevation;
+        this.measuringHeight = measuringHeight;
+    }
+
+    /**
+     * Read the station metadata from the header of a legend file. Lines that are
+     * not part of the header are ignored, and missing values other than the
+     * klimatnummer are left empty (NaN).
+     * @param path path to the legend file
+     * @return metadata of the station
+     * @throws IOException if there is a problem while reading the file
+     * @throws IllegalArgumentException if the file has no valid Klimatnummer
+     */
+    public static StationInfo parseLegend(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        int id = -1;
+        String name = "";
+        double latitude = Double.NaN, longitude = Double.NaN, elevation = Double.NaN, measuringHeight = Double.NaN;
+        for (String line : lines) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).replace("\uFEFF", "").trim(); //The file may start with a byte order mark
+            String value = line.substring(colon + 1).trim();
+            try {
+                if (key.equals("Stationsnamn")) {
+                    name = value;
+                } else if (key.equals("Klimatnummer")) {
+                    id = Integer.parseInt(value);
+                } else if (key.startsWith("Latitud")) {
+                    latitude = Double.parseDouble(value);
+                } else if (key.startsWith("Longitud")) {
+                    longitude = Double.parseDouble(value);
+                } else if (key.startsWith("H\u00f6jd")) {
+                    elevation = Double.parseDouble(value);
+                } else if (key.startsWith("M\u00e4th\u00f6jd")) {
+                    measuringHeight = Double.parseDouble(value);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + key + " in " + path + ": " + value, e);
+            }
+        }
+        if (id < 0) {
+            throw new IllegalArgumentException("No Klimatnummer in " + path);
+        }
+        return new StationInfo(id, name, latitude, longitude, elevation, measuringHeight);
+    }
+
+    /**
+     * @return klimatnummer of the station, e.g. 78400
+     */
+    public int id() {
+        return id;
+    }
+
+    /**
+     * @return name of the station, e.g. Visby Flygplats
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return latitude in decimal degrees
+     */
+    public double latitude() {
+        return latitude;
+    }
+
+    /**
+     * @return longitude in decimal degrees
+     */
+    public double longitude() {
+        return longitude;
+    }
+
+    /**
+     * @return meters above sea level
+     */
+    public double elevation() {
+        return elevation;
+    }
+
+    /**
+     * @return meters above ground where the temperature is measured
+     */
+    public double measuringHeight() {
+        return measuringHeight;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + id + ")";
+    }
+}
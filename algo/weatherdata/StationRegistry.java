@@ -0,0 +1,263 @@
+package algo.weatherdata;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Weather data of many stations, each in its own {@link WeatherDataHandler} keyed
+ * by klimatnummer. A station's data is only loaded when a query first needs it,
+ * from an up to date binary snapshot next to the data file if there is one. When
+ * the loaded stations use more heap than the budget, the least recently queried
+ * ones are unloaded again, and loaded once more if they are queried later.
+ * <p>
+ * Queries over several stations run on the common ForkJoinPool, one station per
+ * task.
+ */
+public class StationRegistry {
+
+    private final long heapBudget;
+    //Compact the readings of stations loaded from CSV files
+    private final boolean compressed;
+    //Access ordered, so the first station is the least recently queried
+    private final LinkedHashMap<Integer, Station> stations = new LinkedHashMap<>(16, 0.75f, true);
+    //Estimated heap of all loaded stations
+    private long loadedBytes;
+    private long loads;
+    private long evictions;
+
+    /**
+     * Create an empty registry.
+     * @param heapBudget estimated heap in bytes that loaded stations may use together,
+     *        the station queried last always stays loaded even if it is larger
+     */
+    public StationRegistry(long heapBudget) {
+        this(heapBudget, false);
+    }
+
+    /**
+     * Create an empty registry.
+     * @param heapBudget estimated heap in bytes that loaded stations may use together,
+     *        the station queried last always stays loaded even if it is larger
+     * @param compressed true to keep the readings of loaded stations in compressed
+     *        blocks, see {@link WeatherDataHandler#compact()}, so that many more fit the budget
+     */
+    public StationRegistry(long heapBudget, boolean compressed) {
+        if (heapBudget < 0) {
+            throw new IllegalArgumentException("Budget must not be negative");
+        }
+        this.heapBudget = heapBudget;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Add a station without loading its data.
+     * @param info metadata of the station
+     * @param dataFile path to the CSV data file of the station
+     * @throws IllegalArgumentException if a station with the same id is already registered
+     */
+    public synchronized void register(StationInfo info, String dataFile) {
+        if (stations.containsKey(info.id())) {
+            throw new IllegalArgumentException("Station " + info.id() + " is already registered");
+        }
+        stations.put(info.id(), new Station(info, Paths.get(dataFile)));
+    }
+
+    /**
+     * Add a station described by a legend file without loading its data.
+     * @param legendFile path to the legend file with the station metadata
+     * @param dataFile path to the CSV data file of the station
+     * @return metadata of the station
+     * @throws IOException if the legend file can not be read
+     * @throws IllegalArgumentException if the legend has no klimatnummer, or the station is already registered
+     */
+    public StationInfo register(String legendFile, String dataFile) throws IOException {
+        StationInfo info = StationInfo.parseLegend(Paths.get(legendFile));
+        register(info, dataFile);
+        return info;
+    }
+
+    /**
+     * @return metadata of every registered station, sorted by id
+     */
+    public synchronized List<StationInfo> stations() {
+        List<StationInfo> infos = new ArrayList<>();
+        for (Station station : new TreeMap<>(stations).values()) {
+            infos.add(station.info);
+        }
+        return infos;
+    }
+
+    /**
+     * Returns the data of a station, loading it first if it is not loaded.
+     * Loading may unload the least recently queried stations.
+     * @param id klimatnummer of the station
+     * @return handler with the station's data
+     * @throws IOException if the station's data can not be loaded
+     * @throws IllegalArgumentException if no station with the id is registered
+     */
+    public WeatherDataHandler station(int id) throws IOException {
+        Station station;
+        synchronized (this) {
+            station = stations.get(id); //O(1), moves the station to most recently queried
+        }
+        if (station == null) {
+            throw new IllegalArgumentException("Unknown station " + id);
+        }
+        WeatherDataHandler handler = station.handler;
+        if (handler != null) {
+            return handler;
+        }
+        long bytes;
+        synchronized (station) { //Other stations can load at the same time
+            handler = station.handler;
+            if (handler != null) {
+                return handler;
+            }
+            handler = load(station.dataFile); //O(n)
+            bytes = handler.estimatedHeapBytes();
+            station.bytes = bytes;
+            station.handler = handler;
+        }
+        synchronized (this) {
+            loads++;
+            loadedBytes += bytes;
+            evict(station);
+        }
+        return handler;
+    }
+
+    /**
+     * Run a query on several stations in parallel.
+     * @param <T> type of the query result
+     * @param ids klimatnummer of the stations
+     * @param query query to run on each station
+     * @return result of each station, sorted by id
+     * @throws UncheckedIOException if the data of a station can not be loaded
+     * @throws IllegalArgumentException if a station is not registered
+     */
+    public <T> Map<Integer, T> query(Collection<Integer> ids, Function<WeatherDataHandler, T> query) {
+        Map<Integer, T> results = new TreeMap<>();
+        ids.parallelStream().distinct().forEach(id -> {
+            T result;
+            try {
+                result = query.apply(station(id)); //O(n) for stations that are not loaded
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            synchronized (results) {
+                results.put(id, result);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Search for the average temperature of all values of several stations between
+     * the two dates (inclusive).
+     * @param ids klimatnummer of the stations
+     * @param dateFrom start date (YYYY-MM-DD) inclusive
+     * @param dateTo end date (YYYY-MM-DD) inclusive
+     * @return sum and number of values of all stations, no rows if there are no values
+     */
+    public PeriodAverage periodAverage(Collection<Integer> ids, LocalDate dateFrom, LocalDate dateTo) {
+        long sum = 0;
+        int count = 0;
+        for (PeriodAverage station : query(ids, handler -> handler.periodAverage(dateFrom, dateTo)).values()) { //O(s log n) s = stations
+            sum += station.sum();
+            count += station.count();
+        }
+        return new PeriodAverage(dateFrom, dateTo, sum, count);
+    }
+
+    /**
+     * Search for percentage of approved values of several stations between the two
+     * dates (inclusive).
+     * @param ids klimatnummer of the stations
+     * @param dateFrom start date (YYYY-MM-DD) inclusive
+     * @param dateTo end date (YYYY-MM-DD) inclusive
+     * @return number of approved and total values of all stations, no rows if there are no values
+     */
+    public ApprovedPercentage approvedPercentage(Collection<Integer> ids, LocalDate dateFrom, LocalDate dateTo) {
+        int approved = 0, total = 0;
+        for (ApprovedPercentage station : query(ids, handler -> handler.approvedPercentage(dateFrom, dateTo)).values()) { //O(s log n) s = stations
+            approved += station.approved();
+            total += station.total();
+        }
+        return new ApprovedPercentage(dateFrom, dateTo, approved, total);
+    }
+
+    /**
+     * @return estimated heap in bytes used by the loaded stations
+     */
+    public synchronized long loadedBytes() {
+        return loadedBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "StationRegistry[stations=" + stations.size() + ", compressed=" + compressed + ", loadedBytes=" + loadedBytes + ", loads=" + loads
+                + ", evictions=" + evictions + "]";
+    }
+
+    //Unload least recently queried stations until the loaded ones fit the budget
+    private void evict(Station keep) {
+        Iterator<Station> oldest = stations.values().iterator();
+        while (loadedBytes > heapBudget && oldest.hasNext()) {
+            Station station = oldest.next();
+            if (station == keep || station.handler == null) { //Stations that are loading are not loaded yet
+                continue;
+            }
+            synchronized (station) {
+                station.handler = null; //Queries that already have the handler keep it until they are done
+                loadedBytes -= station.bytes;
+                station.bytes = 0;
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Load a data file, or its snapshot if it is up to date, and compact it if
+     * the registry is compressed.
+     * @param dataFile path to the CSV data file
+     * @return handler with the data
+     * @throws IOException if the data can not be read
+     */
+    private WeatherDataHandler load(Path dataFile) throws IOException {
+        WeatherDataHandler handler = new WeatherDataHandler();
+        Path snapshot = Paths.get(dataFile + WeatherDataSnapshot.FILE_SUFFIX);
+        handler.loadData((WeatherDataSnapshot.isUpToDate(snapshot, dataFile) ? snapshot : dataFile).toString()); //O(n), or O(d) for a snapshot
+        if (compressed) {
+            handler.compact(); //O(n)
+        }
+        return handler;
+    }
+
+    /**
+     * A registered station, loaded or not.
+     */
+    private static final class Station {
+        final StationInfo info;
+        final Path dataFile;
+        //Null while not loaded
+        volatile WeatherDataHandler handler;
+        //Estimated heap of the loaded data, guarded by the lock on the station
+        long bytes;
+
+        Station(StationInfo info, Path dataFile) {
+            this.info = info;
+            this.dataFile = dataFile;
+        }
+    }
+}
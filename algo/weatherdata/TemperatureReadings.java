@@ -0,0 +1,84 @@
+package algo.weatherdata;
+
+import java.time.LocalDate;
+
+/**
+ * Single readings picked for their temperature, e.g. the lowest and highest
+ * reading in a period, together with the date and hour they were taken.
+ */
+public final class TemperatureReadings implements QueryResult {
+
+    private final int[] epochDays;
+    private final byte[] hours;
+    //Temperature in tenths of a degree
+    private final short[] temperatures;
+    //Describes each row, e.g. "lowest temperature"
+    private final String[] labels;
+    private int size;
+
+    TemperatureReadings(int capacity) {
+        this.epochDays = new int[capacity];
+        this.hours = new byte[capacity];
+        this.temperatures = new short[capacity];
+        this.labels = new String[capacity];
+    }
+
+    void add(int epochDay, int hour, int tempTenths, String label) {
+        epochDays[size] = epochDay;
+        hours[size] = (byte) hour;
+        temperatures[size] = (short) tempTenths;
+        labels[size] = label;
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index index of the row
+     * @return the date of the reading
+     */
+    public LocalDate date(int index) {
+        checkIndex(index);
+        return LocalDate.ofEpochDay(epochDays[index]);
+    }
+
+    /**
+     * @param index index of the row
+     * @return hour of day (UTC) of the reading
+     */
+    public int hour(int index) {
+        checkIndex(index);
+        return hours[index];
+    }
+
+    /**
+     * @param index index of the row
+     * @return temperature in degrees Celsius
+     */
+    public double temperature(int index) {
+        checkIndex(index);
+        return temperatures[index] / 10.0;
+    }
+
+    /**
+     * Example: 1987-01-10 06:00 lowest temperature: -20.3 degrees Celsius
+     */
+    @Override
+    public String format(int index) {
+        checkIndex(index);
+        StringBuilder row = new StringBuilder(64);
+        ResultFormat.appendDate(row, epochDays[index]).append(hours[index] < 10 ? " 0" : " ").append(hours[index]).append(":00 ");
+        row.append(labels[index]).append(": ");
+        ResultFormat.appendHundredths(row, temperatures[index] * 10L);
+        return row.append(" degrees Celsius").toString();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+}
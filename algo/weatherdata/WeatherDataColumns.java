@@ -0,0 +1,66 @@
+package algo.weatherdata;
+
+/**
+ * Read access to weather readings stored column by column. Readings are indexed
+ * from 0 to {@code size() - 1} in the order they appear in the data file.
+ */
+interface WeatherDataColumns {
+
+    /**
+     * @return number of readings
+     */
+    int size();
+
+    /**
+     * @param index index of the reading
+     * @return date of the reading as days since 1970-01-01
+     */
+    int epochDay(int index);
+
+    /**
+     * @param index index of the reading
+     * @return hour of day (UTC) of the reading, 0-23
+     */
+    int hour(int index);
+
+    /**
+     * @param index index of the reading
+     * @return air temperature in tenths of a degree Celsius
+     */
+    int tempTenths(int index);
+
+    /**
+     * @param index index of the reading
+     * @return true if the reading has quality code G
+     */
+    boolean isApproved(int index);
+
+    /**
+     * Returns the index of the first reading on or after the given date (lower
+     * bound). The readings must be sorted by date.
+     * @param epochDay date to search for, as days since 1970-01-01
+     * @return index of the first reading with a date not before epochDay, size() if every reading is earlier
+     */
+    default int firstIndexFrom(long epochDay) {
+        int low = 0, high = size(); //O(1)
+        while (low < high) { //O(log n)
+            int middle = (low + high) >>> 1; //O(1)
+            if (epochDay(middle) < epochDay) { //O(1)
+                low = middle + 1; //O(1)
+            } else {
+                high = middle; //O(1)
+            }
+        }
+        return low; //O(1)
+    }
+
+    /**
+     * Returns the index of the first reading after the given date (upper bound).
+     * The readings must be sorted by date.
+     * @param epochDay date to search for, as days since 1970-01-01
+     * @return index of the first reading with a date after epochDay, size() if there is none
+     */
+    default int firstIndexAfter(long epochDay) {
+        return epochDay == Long.MAX_VALUE ? size() : firstIndexFrom(epochDay + 1); //O(log n)
+    }
+}
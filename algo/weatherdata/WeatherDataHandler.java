@@ -1,48 +1,105 @@
 package algo.weatherdata;
 
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
-import java.time.LocalTime;
+import java.time.Year;
+import java.time.YearMonth;
 import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.regex.PatternSyntaxException;
 
 /**
  * Retrieves temperature data from a weather station file.
+ * Query results are cached per date range until new data is loaded.
+ * <p>
+ * Loaded data is published as an immutable {@link WeatherDataSet} behind a single
+ * volatile reference. Queries read the current data set once and run against it
+ * without locking the handler, so any number of threads can query while new data
+ * is added from another thread. The only lock a query takes is the one on the
+ * {@link QueryCache}, held briefly to look up or store a result but never while a
+ * result is computed. Methods that load data build the next data set off to the 
+ * side and are serialized with each other.
  */
 public class WeatherDataHandler {
 
-	//Populated with Weather objects from the data table
-	private ArrayList<WeatherDataModel> weather = new ArrayList<WeatherDataModel>();
+	//Default query cache limits, roughly a few MB of results
+	private static final int DEFAULT_CACHE_ENTRIES = 256;
+	private static final long DEFAULT_CACHE_WEIGHT = 100_000;
+
+	//Fewest readings whose daily summary is built in parallel by default
+	private static final int DEFAULT_PARALLEL_THRESHOLD = 256 * 1024;
+
+	//The data queries run against, replaced as a whole every time data is loaded
+	private volatile WeatherDataSet data = WeatherDataSet.EMPTY;
+
+	//Readings and indexes that new data is added to before it is published, only
+	//used while holding the lock on this handler.
+	//All null while data holds a memory mapped snapshot or compressed readings, which are read only
+	private WeatherDataStore store = new WeatherDataStore();
+	private DailySummary daily = DailySummary.build(store);
+	private PrefixSums prefixSums = PrefixSums.build(store);
+	private long version;
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+	//Results of recent queries, cleared every time data is loaded
+	private final QueryCache cache;
+
+	//Last CSV file loaded and the byte offset read up to, for appendData
+	private Path tailPath;
+	private long tailOffset;
+
+	/**
+	 * Create a handler with a query cache of default size.
+	 */
+	public WeatherDataHandler() {
+		this(DEFAULT_CACHE_ENTRIES, DEFAULT_CACHE_WEIGHT);
+	}
+
+	/**
+	 * Create a handler with a query cache of the given size.
+	 * 
+	 * @param cacheEntries maximum number of cached query results, 0 disables the cache
+	 * @param cacheWeight maximum total number of result rows in the cache
+	 */
+	public WeatherDataHandler(int cacheEntries, long cacheWeight) {
+		cache = new QueryCache(cacheEntries, cacheWeight);
+	}
 
 	/**
-	 * Load weather data from file.
+	 * Load weather data from file. The file is either a CSV data file or a binary
+	 * snapshot written by {@link #saveSnapshot(String)}.
+	 * <p>
+	 * A CSV file is split into line aligned ranges that are parsed in parallel, each
+	 * streamed in fixed-size chunks, so the raw text of the file is never held in
+	 * memory as a whole. A snapshot is memory mapped and its readings are queried in
+	 * place without using the heap. The per-day indexes are rebuilt from them in O(n),
+	 * which is still much faster than parsing the CSV file.
+	 * <p>
+	 * Readings that end up out of order, e.g. when several exports are loaded one
+	 * after the other, are sorted by date and hour. Of repeated hours, the reading
+	 * loaded last is kept.
 	 * 
 	 * @param filePath path to file with weather data
+	 * @return true if the whole file was loaded, false if a line could not be parsed
+	 * and only the readings before it were loaded
 	 * @throws IOException if there is a problem while reading the file
 	 */
-	public void loadData(String filePath) throws IOException {		
-		List<String> fileData = Files.readAllLines(Paths.get(filePath)); //O(1)
+	public synchronized boolean loadData(String filePath) throws IOException {		
+		Path path = Paths.get(filePath); //O(1)
+		if (WeatherDataSnapshot.isSnapshot(path)) { //O(1)
+			loadSnapshot(path); //O(n) to build the indexes
+			return true;
+		}
 
+		ensureHeapStore(); //O(1), or O(n) when the loaded data is read only
+		tailPath = path.toAbsolutePath().normalize(); //O(1)
+		tailOffset = 0; //Read from the start again if the load fails half way
+		boolean complete = false;
 		try {
-			
-			// Incoming String format -> {Datum;Tid (UTC);Lufttemperatur;Kvalitet}
-			for (String line : fileData) { //O(n)
-				String[] data = line.split(";"); //O(1)
-	
-				LocalDate newDate = LocalDate.parse(data[0]); //O(1)
-				LocalTime newTime = LocalTime.parse(data[1]); //O(1)
-				float newTemp = Float.parseFloat(data[2]); //O(1)
-				boolean goodAir = data[3].equals("G"); //O(1)
-	
-				weather.add(new WeatherDataModel(newDate, newTime, newTemp, goodAir)); //O(1)
-			}
-		} catch (PatternSyntaxException e) {
-			System.out.println("Could not split line:" + e.getLocalizedMessage());
+			tailOffset = WeatherDataLoader.load(path, store); //O(n / p) p = number of cores
+			complete = true;
 		} catch (DateTimeParseException e) {
 			System.out.println("Could not parse date:" + e.getLocalizedMessage());
 		} catch (NumberFormatException e) {
@@ -50,6 +107,207 @@ public class WeatherDataHandler {
 		} catch (NullPointerException e) {
 			System.out.println("Something could not be located: " + e.getLocalizedMessage());
 		}
+		buildIndexes(); //O(n)
+		return complete;
+	}
+
+	/**
+	 * Add new readings to the loaded weather data without loading everything again.
+	 * Only readings later than the last loaded reading are added, so the same rows
+	 * are never added twice.
+	 * <p>
+	 * If the file is the CSV file last given to {@link #loadData(String)} (or this 
+	 * method), only the bytes added to it since then are read. Any other file is 
+	 * read as a delta file from the start. A last line that is not complete yet is
+	 * left for the next call. The indexes are extended in place.
+	 * 
+	 * @param filePath path to CSV file with new weather data
+	 * @return number of readings added
+	 * @throws IOException if there is a problem while reading the file
+	 */
+	public synchronized int appendData(String filePath) throws IOException {
+		Path path = Paths.get(filePath).toAbsolutePath().normalize(); //O(1)
+		boolean tail = path.equals(tailPath); //O(1)
+		long offset = tail && Files.size(path) >= tailOffset ? tailOffset : 0; //A shorter file has been replaced, read it all
+
+		ensureHeapStore(); //O(1), or O(n) when the loaded data is read only
+		int oldSize = store.size(); //O(1)
+		try {
+			long end = WeatherDataLoader.appendNewer(path, offset, store); //O(k) k = new bytes
+			tailPath = path; //O(1), the next call only reads what is added to this file after end
+			tailOffset = end; //O(1)
+		} catch (DateTimeParseException e) {
+			System.out.println("Could not parse date:" + e.getLocalizedMessage());
+		} catch (NumberFormatException e) {
+			System.out.println("Could not parse temp:" + e.getLocalizedMessage());
+		}
+
+		if (store.size() > oldSize) { //O(1)
+			daily.append(store, oldSize); //O(k)
+			prefixSums.append(store, oldSize); //O(k)
+			publish(); //O(d) d = days in the data
+		}
+		return store.size() - oldSize; //O(1)
+	}
+
+	/**
+	 * Continue {@link #appendData(String)} at an offset of a CSV file whose readings
+	 * up to there are already loaded, e.g. from an up to date snapshot of the file,
+	 * so that the first append does not read the whole file once more.
+	 * 
+	 * @param filePath path to the CSV data file
+	 * @param offset byte offset the loaded readings cover, must be the start of a line
+	 */
+	synchronized void resumeAppend(String filePath, long offset) {
+		tailPath = Paths.get(filePath).toAbsolutePath().normalize(); //O(1)
+		tailOffset = offset; //O(1)
+	}
+
+	/**
+	 * Rebuild the indexes over the store after new data has been loaded, and publish.
+	 * Readings that were loaded out of order are sorted first, so that the searches
+	 * by date stay correct.
+	 */
+	private void buildIndexes() {
+		store.sortByTime(); //O(n)
+		daily = DailySummary.build(store, parallelThreshold); //O(n / p) p = number of cores
+		prefixSums = PrefixSums.build(store); //O(n)
+		publish(); //O(d) d = days in the data
+	}
+
+	/**
+	 * Make the readings and indexes in the store visible to queries. Queries that 
+	 * are already running keep the data set they started with.
+	 */
+	private void publish() {
+		data = new WeatherDataSet(++version, store.freeze(), daily.freeze(), prefixSums.freeze()); //O(d) d = days in the data
+		cache.clear(); //Cached results belong to the old data
+	}
+
+	/**
+	 * Set how much data it takes to aggregate readings per day in parallel. The 
+	 * readings are then split into index ranges that are summarised on the common 
+	 * ForkJoinPool and merged by date. Takes effect the next time data is loaded.
+	 * 
+	 * @param readings fewest readings to aggregate in parallel, Integer.MAX_VALUE never does
+	 */
+	public synchronized void setParallelThreshold(int readings) {
+		if (readings < 0) {
+			throw new IllegalArgumentException("Threshold must not be negative");
+		}
+		parallelThreshold = readings;
+	}
+
+	/**
+	 * Estimate the heap used by the loaded data and its indexes, e.g. to decide 
+	 * which data to unload. Readings in a memory mapped snapshot are not counted.
+	 * 
+	 * @return estimated size in bytes
+	 */
+	public long estimatedHeapBytes() {
+		return data.estimatedHeapBytes(); //O(1)
+	}
+
+	/**
+	 * Returns the cache in front of the query methods, e.g. to read its hit and miss counters.
+	 * 
+	 * @return the query cache
+	 */
+	public QueryCache queryCache() {
+		return cache;
+	}
+
+	/**
+	 * Run a per-day query without looking it up in the cache or adding it, e.g. for
+	 * a period merged from several requests that no caller asked for as a whole.
+	 * 
+	 * @param kind DAILY_AVERAGES or DAILY_MISSING_VALUES
+	 * @param dateFrom start date (YYYY-MM-DD) inclusive  
+	 * @param dateTo end date (YYYY-MM-DD) inclusive
+	 * @return the result, of the type the cached query of the same kind returns
+	 */
+	QueryResult uncachedQuery(QueryCache.Kind kind, LocalDate dateFrom, LocalDate dateTo) {
+		WeatherDataSet current = data; //O(1), the same data set for the whole query
+		if (kind == QueryCache.Kind.DAILY_AVERAGES) {
+			return computeDailyAverages(current, dateFrom, dateTo); //O(d) d = days in range
+		} else if (kind == QueryCache.Kind.DAILY_MISSING_VALUES) {
+			return computeDailyMissingValues(current, dateFrom, dateTo); //O(d)
+		}
+		throw new IllegalArgumentException("Query " + kind + " can not be run uncached");
+	}
+
+	/**
+	 * Re-encode the loaded readings in compressed blocks, see {@link CompressedColumns},
+	 * to keep the data of many stations in memory. The readings then take about a
+	 * third of the heap and need no prefix sums. Totals over a period add up block
+	 * headers instead of reading two prefix sums, and reading single values decodes
+	 * their block. A memory mapped snapshot is not on the heap and is left as it is.
+	 * Loading or appending data afterwards goes back to plain readings.
+	 */
+	public synchronized void compact() {
+		WeatherDataSet current = data; //O(1)
+		if (current.weather instanceof CompressedColumns || current.weather instanceof WeatherDataSnapshot) {
+			return; //O(1)
+		}
+		CompressedColumns compressed = CompressedColumns.encode(current.weather); //O(n)
+		store = null; //O(1)
+		daily = null; //O(1)
+		prefixSums = null; //O(1)
+		data = new WeatherDataSet(++version, compressed, current.daily, compressed); //O(d) d = days in the data
+		cache.clear(); //Cached results belong to the old data
+	}
+
+	/**
+	 * Write the loaded weather data to a binary snapshot file that can later be
+	 * opened with {@link #loadData(String)} without parsing the CSV file again.
+	 * 
+	 * @param filePath path to the snapshot file, replaced if it exists
+	 * @throws IOException if there is a problem while writing the file
+	 */
+	public void saveSnapshot(String filePath) throws IOException {
+		WeatherDataSnapshot.write(data.weather, Paths.get(filePath)); //O(n)
+	}
+
+	/**
+	 * Maps a snapshot file and publishes it. If no data has been loaded yet the 
+	 * mapped snapshot is used as it is, otherwise its readings are added after the 
+	 * loaded ones.
+	 * @param path path to the snapshot file
+	 * @throws IOException if the file is not a valid snapshot
+	 */
+	private void loadSnapshot(Path path) throws IOException {
+		WeatherDataSnapshot snapshot = WeatherDataSnapshot.open(path); //O(1)
+		if (data.weather.size() == 0) { //O(1)
+			store = null; //O(1)
+			daily = null; //O(1)
+			prefixSums = null; //O(1)
+			data = WeatherDataSet.of(++version, snapshot, parallelThreshold); //O(n)
+			cache.clear(); //Cached results belong to the old data
+			return;
+		}
+		ensureHeapStore(); //O(1), or O(n) when the loaded data is read only
+		for (int i = 0; i < snapshot.size(); i++) { //O(n)
+			store.add(snapshot.epochDay(i), snapshot.hour(i), snapshot.tempTenths(i), snapshot.isApproved(i)); //O(1)
+		}
+		buildIndexes(); //O(n)
+	}
+
+	/**
+	 * Makes sure there is a store that new readings can be added to. A mapped 
+	 * snapshot and compressed readings are read only, so their readings are first
+	 * copied to the heap and indexed again. Until the next publish, queries keep using the snapshot.
+	 */
+	private void ensureHeapStore() {
+		if (store != null) { //O(1)
+			return; //O(1)
+		}
+		WeatherDataColumns weather = data.weather; //O(1)
+		store = new WeatherDataStore(); //O(1)
+		for (int i = 0; i < weather.size(); i++) { //O(n)
+			store.add(weather.epochDay(i), weather.hour(i), weather.tempTenths(i), weather.isApproved(i)); //O(1)
+		}
+		daily = DailySummary.build(store, parallelThreshold); //O(n / p)
+		prefixSums = PrefixSums.build(store); //O(n)
 	}
 
 	/**
@@ -65,122 +323,85 @@ public class WeatherDataHandler {
 	 * @return average temperature for each date, sorted by date  
 	 */
 	public List<String> averageTemperatures(LocalDate dateFrom, LocalDate dateTo) {
-		int firstIndex = findFirstIndexByDate(dateFrom, 0, weather.size()-1 , (weather.size() / 2)); // O(log n)
-		int lastIndex = findLastIndexByDate(dateTo, 0, weather.size()-1, (weather.size() + firstIndex )/2); // O(log m) m = range of n from firstIndex to end
-		
-		List<String> result = new LinkedList<String>(); //O(1)
-		try {
-			
-			TreeMap<LocalDate, List<Float>> rangeList = getRangeWeatherList(firstIndex, lastIndex); //O(k) -> k = range within weather array
-			
-			
-			for (Map.Entry<LocalDate, List<Float>> entry : rangeList.entrySet()) { // O(n) -> n = total dates (inclusive) within range k
-				double avgTemp = BigDecimal.valueOf(entry.getValue().stream().mapToDouble(d -> d).average().getAsDouble()).setScale(2, RoundingMode.HALF_UP).doubleValue(); //O(1)
-				result.add(entry.getKey().toString() + " average temperature: " + String.valueOf(avgTemp) + " degrees Celsius"); //O(1)
-			}
-		} catch (IndexOutOfBoundsException e) { 
-			System.out.println("Invalid date given"); //O(1)
-		} catch (Exception e) {
-			System.out.println("Something went wrong: " + e.getLocalizedMessage()); //O(1)
-		}
-		return result; //O(1)
+		return dailyAverages(dateFrom, dateTo).toStrings(); //O(d) d = days in range
 	}
 
 	/**
-	 * Creates HashMap<Date, List<Temperatures> from weather ArrayList. 
-	 * Each key is the date, with all of the temperatures for that day added in a list of values.
-	 * Example: Key: {2021-12-26}: Values: {1.1, 2.2, 2.1, 2.0...} 
-	 * @param firstIndex where to start in the weather ArrayList
-	 * @param lastIndex where to end in the weather ArrayList
-	 * @return 
+	 * Search for average temperature for all dates between the two dates (inclusive),
+	 * sorted by date (ascending). Same as {@link #averageTemperatures} but the 
+	 * averages are kept as numbers until the result is formatted.
+	 * 
+	 * @param dateFrom start date (YYYY-MM-DD) inclusive  
+	 * @param dateTo end date (YYYY-MM-DD) inclusive
+	 * @return average temperature for each date, sorted by date  
 	 */
-	private TreeMap<LocalDate, List<Float>> getRangeWeatherList(int firstIndex, int lastIndex) {
-		TreeMap<LocalDate, List<Float>> rangeList = new TreeMap<LocalDate, List<Float>>(); //O(1)
+	public DailyAverages dailyAverages(LocalDate dateFrom, LocalDate dateTo) {
+		WeatherDataSet current = data; //O(1), the same data set for the whole query
+		return cache.get(QueryCache.Kind.DAILY_AVERAGES, current.version, dateFrom, dateTo, () -> computeDailyAverages(current, dateFrom, dateTo)); //O(1) on a cache hit
+	}
 
-		try {
-			
-			for(int i = firstIndex; i <= lastIndex; i++) { //O(k) k = range 
-				LocalDate date = weather.get(i).date; //O(1)
-				float temp = weather.get(i).airTemp; //O(1)
-				
-				if (rangeList.containsKey(date)) { //O(log n)
-					rangeList.get(date).add(temp); //O(log n)
-				} else {
-					rangeList.put(date, new ArrayList<Float>()); //O(log n)
-					rangeList.get(date).add(temp); //O(log n)
-				}
-			}
-		} catch (IndexOutOfBoundsException e) { //O(1)
-			System.out.println("Not a valid date. Please try again"); //O(1)
-		} 
-
-		return rangeList; //O(1)
-	}
-
-	/**
-	 * Returns the index of the last Weather object with the given date
-	 * @param searchDate {@code LocalDate} date (YYYY-MM-DD) to search for 
-	 * @param startIndex first possible index in weather ArrayList to search
-	 * @param endIndex last possible index in weather ArrayList to search
-	 * @param searchIndex current index in weather ArrayList to search
-	 * @return
-	 */
-	private int findLastIndexByDate(LocalDate searchDate, int startIndex, int endIndex, int searchIndex) {
-		if (startIndex < endIndex) { //O(1)
-			
-			LocalDate currenDate = weather.get(searchIndex).date; //O(1)
-			
-			if (currenDate.equals(searchDate)) { //O(1)
-				if (currenDate.equals(weather.get(searchIndex + 1).date)) { //O(1)
-					return findLastIndexByDate(searchDate, searchIndex, endIndex, searchIndex + 1); //O(log n)
-				}
-			return searchIndex; //O(1)
-			} else if (currenDate.isAfter(searchDate)) { //O(1)
-				endIndex = searchIndex - 1; //O(1)
-				searchIndex = (startIndex + endIndex) / 2; //O(1)
-				return findLastIndexByDate(searchDate, startIndex, endIndex, searchIndex); //O(log n)
-			} else {
-				startIndex = searchIndex + 1; //O(1)
-				searchIndex = (startIndex + endIndex) / 2; //O(1)
-				return findLastIndexByDate(searchDate, startIndex, endIndex, searchIndex); //O(log n)
-			}
-		}
+	private DailyAverages computeDailyAverages(WeatherDataSet data, LocalDate dateFrom, LocalDate dateTo) {
+		int firstDay = firstDayInData(data, dateFrom); //O(1)
+		int lastDay = lastDayInData(data, dateTo); //O(1)
+		DailyAverages result = new DailyAverages(Math.max(0, lastDay - firstDay + 1)); //O(d) d = days in range
 
-		return -1; //No result
-	}
-
-	/**
-	 * Search for the index of the first entry in the array with the given Date.
-	 * @param dateFrom date (YYYY-MM-DD) to search for
-	 * @param startIndex first possible index in weather ArrayList to search
-	 * @param endIndex last possible index in weather ArrayList to search
-	 * @param searchIndex current index in weather ArrayList to search
-	 * @return index of first entry in Array with given Date
-	 */
-	private int findFirstIndexByDate(LocalDate dateFrom, int startIndex, int endIndex, int searchIndex) { 
-
-		if (startIndex < endIndex) { //O(1)
-			
-			LocalDate indexDate = weather.get(searchIndex).date; //O(1)
-			
-			if (indexDate.equals(dateFrom)) { //O(1)
-				if (weather.get(searchIndex - 1).date.equals(dateFrom)) { //O(1)
-					return findFirstIndexByDate(dateFrom, startIndex, endIndex, searchIndex - 1);  //O(log n)		
-				}
-				return searchIndex; //O(1)
-			} else if (indexDate.isAfter(dateFrom)) { //O(1)
-				endIndex = searchIndex - 1; //O(1)
-				searchIndex = (startIndex + endIndex)/2; //O(1)
-				return findFirstIndexByDate(dateFrom, startIndex, endIndex, searchIndex); //O(log n)
-			} else {
-				startIndex = searchIndex + 1; //O(1)
-				searchIndex = (startIndex + endIndex) / 2; //O(1) 
-				return findFirstIndexByDate(dateFrom, startIndex, endIndex, searchIndex); //O(log n)
+		for (int day = firstDay; day <= lastDay; day++) { //O(d)
+			int count = data.daily.count(day); //O(1)
+			if (count > 0) { //Days without any readings are not listed
+				result.add(day, data.daily.sum(day), count); //O(1)
 			}
 		}
+		return result; //O(1)
+	}
+
+	/**
+	 * Returns the given date as an epoch day, moved forward to the first day in 
+	 * the data if it is earlier. A date after the last day in the data returns the
+	 * day after it, so that no day is visited. The date is clamped as a long before
+	 * it is cast, so far future dates do not overflow.
+	 * @param data data set to clamp to
+	 * @param date date to clamp
+	 * @return first day to visit in the daily summary
+	 */
+	private static int firstDayInData(WeatherDataSet data, LocalDate date) {
+		long first = Math.max(date.toEpochDay(), data.daily.firstDay()); //O(1)
+		return (int) Math.min(first, data.daily.lastDay() + 1L); //O(1)
+	}
+
+	/**
+	 * Returns the given date as an epoch day, moved back to the last day in the 
+	 * data if it is later. A date before the first day in the data returns the day
+	 * before it, so that no day is visited. With no data loaded this is before
+	 * {@link #firstDayInData}.
+	 * @param data data set to clamp to
+	 * @param date date to clamp
+	 * @return last day to visit in the daily summary
+	 */
+	private static int lastDayInData(WeatherDataSet data, LocalDate date) {
+		long last = Math.min(date.toEpochDay(), data.daily.lastDay()); //O(1)
+		return (int) Math.max(last, data.daily.firstDay() - 1L); //O(1)
+	}
 
-		return -1; //No result
+	/**
+	 * Returns the index of the first reading on or after the given date 
+	 * (lower bound). If every reading is earlier, the number of readings is returned.
+	 * @param weather readings to search
+	 * @param searchDate date to search for, as days since 1970-01-01
+	 * @return index of the first reading with a date not before searchDate
+	 */
+	private static int findFirstIndexByDate(WeatherDataColumns weather, long searchDate) {
+		return weather.firstIndexFrom(searchDate); //O(log n)
+	}
 
+	/**
+	 * Returns the index of the last reading on or before the given date 
+	 * (upper bound - 1). If every reading is later, -1 is returned.
+	 * @param weather readings to search
+	 * @param searchDate date to search for, as days since 1970-01-01
+	 * @return index of the last reading with a date not after searchDate
+	 */
+	private static int findLastIndexByDate(WeatherDataColumns weather, long searchDate) {
+		return weather.firstIndexAfter(searchDate) - 1; //O(log n)
 	}
 
 	/**
@@ -197,19 +418,38 @@ public class WeatherDataHandler {
 	 * @return dates with missing values together with number of missing values for each date, sorted by number of missing values (descending)
 	 */
 	public List<String> missingValues(LocalDate dateFrom, LocalDate dateTo) {
-		int startIndex = findFirstIndexByDate(dateFrom, 0, weather.size() - 1, weather.size() / 2); //O(log n)
-		int endIndex = findLastIndexByDate(dateTo, startIndex, weather.size()-1, (startIndex + weather.size()) / 2); //O(log m) m = range of n from startIndex -> end
-		
-		TreeMap<LocalDate, List<Float>> days = getRangeWeatherList(startIndex, endIndex); //O(k) k = range in weather collection
+		return dailyMissingValues(dateFrom, dateTo).toStrings(); //O(d) d = days in range
+	}
+
+	/**
+	 * Search for missing values between the two dates (inclusive) assuming there 
+	 * should be 24 measurement values for each day. Same as {@link #missingValues}
+	 * but the counts are kept as numbers until the result is formatted.
+	 * 
+	 * @param dateFrom start date (YYYY-MM-DD) inclusive  
+	 * @param dateTo end date (YYYY-MM-DD) inclusive
+	 * @return dates together with number of missing values for each date, sorted by number of missing values (descending)
+	 */
+	public DailyMissingValues dailyMissingValues(LocalDate dateFrom, LocalDate dateTo) {
+		WeatherDataSet current = data; //O(1), the same data set for the whole query
+		return cache.get(QueryCache.Kind.DAILY_MISSING_VALUES, current.version, dateFrom, dateTo, () -> computeDailyMissingValues(current, dateFrom, dateTo)); //O(1) on a cache hit
+	}
+
+	private DailyMissingValues computeDailyMissingValues(WeatherDataSet data, LocalDate dateFrom, LocalDate dateTo) {
+		int firstDay = firstDayInData(data, dateFrom); //O(1)
+		int lastDay = lastDayInData(data, dateTo); //O(1)
+		DailyMissingValues result = new DailyMissingValues(Math.max(0, lastDay - firstDay + 1)); //O(d) d = days in range
 
-		LinkedList<String> result = new LinkedList<>(); //O(1)
-		
-		for (Map.Entry<LocalDate, List<Float>> entry : days.entrySet()) { //O(m) m = total dates (inclusive) in TreeMap days
-			result.add(entry.getKey().toString() + " missing " + (24 - entry.getValue().size()) + " values"); // O(1)
+		for (int day = firstDay; day <= lastDay; day++) { //O(d)
+			int count = data.daily.count(day); //O(1)
+			if (count > 0) { //Days without any readings are not listed
+				result.add(day, DailyMissingValues.READINGS_PER_DAY - count); //O(1)
+			}
 		}
-	
+		result.rankByMissing(); //O(d), counting sort on 0-24 missing values
 		return result; //O(1)
 	}
+
 	/**
 	 * Search for percentage of approved values between the two dates (inclusive).
 	 * When searching from 2000-01-01 to 2000-01-03 the result should be:
@@ -220,22 +460,262 @@ public class WeatherDataHandler {
 	 * @return period and percentage of approved values for the period  
 	 */
 	public List<String> approvedValues(LocalDate dateFrom, LocalDate dateTo) {
-		int totalRecords = 0, approvedRecords = 0; // O(1)
-		int startIndex = findFirstIndexByDate(dateFrom, 0, weather.size()-1, weather.size()/2); //O(log n)
-		int endIndex = findLastIndexByDate(dateTo, startIndex, weather.size() -1,( weather.size() + startIndex) / 2); //O(log m) m = range of n from startIndex -> end
-		
-		List<String> result = new LinkedList<String>(); //O(1)
-		for (int i = startIndex; i <= endIndex; i++) { //O(k) k = range in weather collection
-			if (weather.get(i).approved) { // O(1)
-				approvedRecords++; //O(1)
+		return approvedPercentage(dateFrom, dateTo).toStrings(); //O(log n)
+	}
+
+	/**
+	 * Search for percentage of approved values between the two dates (inclusive).
+	 * Same as {@link #approvedValues} but the counts are kept as numbers until
+	 * the result is formatted.
+	 * 
+	 * @param dateFrom start date (YYYY-MM-DD) inclusive  
+	 * @param dateTo end date (YYYY-MM-DD) inclusive
+	 * @return number of approved and total values for the period, no rows if there are no values
+	 */
+	public ApprovedPercentage approvedPercentage(LocalDate dateFrom, LocalDate dateTo) {
+		WeatherDataSet current = data; //O(1), the same data set for the whole query
+		return cache.get(QueryCache.Kind.APPROVED_PERCENTAGE, current.version, dateFrom, dateTo, () -> computeApprovedPercentage(current, dateFrom, dateTo)); //O(1) on a cache hit
+	}
+
+	private ApprovedPercentage computeApprovedPercentage(WeatherDataSet data, LocalDate dateFrom, LocalDate dateTo) {
+		int startIndex = findFirstIndexByDate(data.weather, dateFrom.toEpochDay()); //O(log n)
+		int endIndex = findLastIndexByDate(data.weather, dateTo.toEpochDay()); //O(log n)
+		int totalRecords = Math.max(0, endIndex + 1 - startIndex); //O(1)
+		int approvedRecords = totalRecords > 0 ? data.sums.approvedCount(startIndex, endIndex + 1) : 0; //O(1)
+
+		return new ApprovedPercentage(dateFrom, dateTo, approvedRecords, totalRecords); //O(1)
+	}
+
+	/**
+	 * Search for the average temperature of all values between the two dates (inclusive).
+	 * When searching from 2000-01-01 to 2000-01-03 the result should be:
+	 * Average temperature between 2000-01-01 and 2000-01-03: 1.8 degrees Celsius
+	 * 
+	 * @param dateFrom start date (YYYY-MM-DD) inclusive  
+	 * @param dateTo end date (YYYY-MM-DD) inclusive
+	 * @return period and average temperature for the period  
+	 */
+	public List<String> periodAverageTemperature(LocalDate dateFrom, LocalDate dateTo) {
+		return periodAverage(dateFrom, dateTo).toStrings(); //O(log n)
+	}
+
+	/**
+	 * Search for the average temperature of all values between the two dates (inclusive).
+	 * Same as {@link #periodAverageTemperature} but the average is kept as a number 
+	 * until the result is formatted.
+	 * 
+	 * @param dateFrom start date (YYYY-MM-DD) inclusive  
+	 * @param dateTo end date (YYYY-MM-DD) inclusive
+	 * @return sum and number of values for the period, no rows if there are no values
+	 */
+	public PeriodAverage periodAverage(LocalDate dateFrom, LocalDate dateTo) {
+		WeatherDataSet current = data; //O(1), the same data set for the whole query
+		return cache.get(QueryCache.Kind.PERIOD_AVERAGE, current.version, dateFrom, dateTo, () -> computePeriodAverage(current, dateFrom, dateTo)); //O(1) on a cache hit
+	}
+
+	private PeriodAverage computePeriodAverage(WeatherDataSet data, LocalDate dateFrom, LocalDate dateTo) {
+		int startIndex = findFirstIndexByDate(data.weather, dateFrom.toEpochDay()); //O(log n)
+		int endIndex = findLastIndexByDate(data.weather, dateTo.toEpochDay()); //O(log n)
+		int totalRecords = Math.max(0, endIndex + 1 - startIndex); //O(1)
+		long tempSum = totalRecords > 0 ? data.sums.temperatureSum(startIndex, endIndex + 1) : 0; //O(1)
+
+		return new PeriodAverage(dateFrom, dateTo, tempSum, totalRecords); //O(1)
+	}
+
+	/**
+	 * Search for mean, lowest and highest temperature and percentage of approved
+	 * values for each month between the two months (inclusive), sorted by month
+	 * (ascending). When searching from 2000-01 to 2000-01 the result could be:
+	 * 2000-01 average temperature: 0.42 (min -8.3, max 6.1) degrees Celsius, approved values: 32.86 %
+	 * 
+	 * @param monthFrom start month (YYYY-MM) inclusive
+	 * @param monthTo end month (YYYY-MM) inclusive
+	 * @return statistics for each month with values, sorted by month
+	 */
+	public CalendarStatistics monthlyStatistics(YearMonth monthFrom, YearMonth monthTo) {
+		WeatherDataSet current = data; //O(1), the same data set for the whole query
+		long fromMonth = monthFrom.getYear() * 12L + monthFrom.getMonthValue() - 1; //O(1)
+		long toMonth = monthTo.getYear() * 12L + monthTo.getMonthValue() - 1; //O(1)
+		return cache.get(QueryCache.Kind.MONTHLY_STATISTICS, current.version, monthFrom.atDay(1), monthTo.atEndOfMonth(),
+				() -> current.calendar.months(fromMonth, toMonth)); //O(m) m = months in range, O(1) on a cache hit
+	}
+
+	/**
+	 * Search for mean, lowest and highest temperature and percentage of approved
+	 * values for each year between the two years (inclusive), sorted by year
+	 * (ascending).
+	 * 
+	 * @param yearFrom start year inclusive
+	 * @param yearTo end year inclusive
+	 * @return statistics for each year with values, sorted by year
+	 */
+	public CalendarStatistics yearlyStatistics(Year yearFrom, Year yearTo) {
+		WeatherDataSet current = data; //O(1), the same data set for the whole query
+		return cache.get(QueryCache.Kind.YEARLY_STATISTICS, current.version, yearFrom.atDay(1), yearTo.atMonth(12).atEndOfMonth(),
+				() -> current.calendar.years(yearFrom.getValue(), yearTo.getValue())); //O(y) y = years in range, O(1) on a cache hit
+	}
+
+	/**
+	 * Search for mean, lowest and highest temperature and percentage of approved
+	 * values for each meteorological season (DJF, MAM, JJA, SON) of the years 
+	 * between the two years (inclusive), sorted by season (ascending). The winter
+	 * of a year starts in December of the year before.
+	 * 
+	 * @param yearFrom start year inclusive
+	 * @param yearTo end year inclusive
+	 * @return statistics for each season with values, sorted by season
+	 */
+	public CalendarStatistics seasonalStatistics(Year yearFrom, Year yearTo) {
+		WeatherDataSet current = data; //O(1), the same data set for the whole query
+		return cache.get(QueryCache.Kind.SEASONAL_STATISTICS, current.version, yearFrom.atDay(1), yearTo.atMonth(12).atEndOfMonth(),
+				() -> current.calendar.seasons(yearFrom.getValue(), yearTo.getValue())); //O(y) y = years in range, O(1) on a cache hit
+	}
+
+	/**
+	 * Search for the lowest and the highest reading between the two dates (inclusive).
+	 * When searching from 2000-01-01 to 2000-01-03 the result could be:
+	 * 2000-01-01 06:00 lowest temperature: -1.2 degrees Celsius
+	 * 2000-01-03 13:00 highest temperature: 4.4 degrees Celsius
+	 * If several readings share the lowest or highest temperature, the earliest is
+	 * returned.
+	 * 
+	 * @param dateFrom start date (YYYY-MM-DD) inclusive
+	 * @param dateTo end date (YYYY-MM-DD) inclusive
+	 * @return the lowest and the highest reading, no rows if there are no readings
+	 */
+	public TemperatureReadings temperatureExtremes(LocalDate dateFrom, LocalDate dateTo) {
+		WeatherDataSet current = data; //O(1), the same data set for the whole query
+		return cache.get(QueryCache.Kind.TEMPERATURE_EXTREMES, current.version, dateFrom, dateTo, () -> computeTemperatureExtremes(current, dateFrom, dateTo)); //O(1) on a cache hit
+	}
+
+	private static TemperatureReadings computeTemperatureExtremes(WeatherDataSet data, LocalDate dateFrom, LocalDate dateTo) {
+		long lowestDay = data.extremes.lowestDay(dateFrom.toEpochDay(), dateTo.toEpochDay()); //O(1)
+		long highestDay = data.extremes.highestDay(dateFrom.toEpochDay(), dateTo.toEpochDay()); //O(1)
+		TemperatureReadings result = new TemperatureReadings(2); //O(1)
+		if (lowestDay != RangeExtremes.NO_DAY) { //Both are found or neither
+			addReading(result, data, lowestDay, data.daily.min((int) lowestDay), "lowest temperature"); //O(log n)
+			addReading(result, data, highestDay, data.daily.max((int) highestDay), "highest temperature"); //O(log n)
+		}
+		return result; //O(1)
+	}
+
+	//Add the first reading of a day with the given temperature to a result
+	private static void addReading(TemperatureReadings result, WeatherDataSet data, long epochDay, int tempTenths, String label) {
+		WeatherDataColumns weather = data.weather; //O(1)
+		for (int i = findFirstIndexByDate(weather, epochDay); i < weather.size() && weather.epochDay(i) == epochDay; i++) { //O(log n + 24)
+			if (weather.tempTenths(i) == tempTenths) {
+				result.add(weather.epochDay(i), weather.hour(i), tempTenths, label); //O(1)
+				return;
 			}
-			totalRecords++; //O(1)
 		}
+	}
 
-		double percentage = ((double)approvedRecords / totalRecords) * 100; //O(1)
-		percentage = BigDecimal.valueOf(percentage).setScale(2, RoundingMode.HALF_UP).doubleValue(); //O(1)
-		result.add("Approved values between " + dateFrom.toString() + " and " + dateTo.toString() + ": " + percentage + " %"); //O(1)
+	/**
+	 * Search for the coldest readings between the two dates (inclusive), sorted by
+	 * temperature (ascending) and by time when temperatures are equal. Results
+	 * depend on the count and are not cached.
+	 * 
+	 * @param dateFrom start date (YYYY-MM-DD) inclusive
+	 * @param dateTo end date (YYYY-MM-DD) inclusive
+	 * @param count largest number of readings to return
+	 * @return the coldest readings, fewer than count if there are fewer readings
+	 */
+	public TemperatureReadings coldestReadings(LocalDate dateFrom, LocalDate dateTo, int count) {
+		return extremeReadings(data, dateFrom, dateTo, count, false); //O(k log k) k = count
+	}
 
-		return result; //O (1)
+	/**
+	 * Search for the warmest readings between the two dates (inclusive), sorted by
+	 * temperature (descending) and by time when temperatures are equal. Results
+	 * depend on the count and are not cached.
+	 * 
+	 * @param dateFrom start date (YYYY-MM-DD) inclusive
+	 * @param dateTo end date (YYYY-MM-DD) inclusive
+	 * @param count largest number of readings to return
+	 * @return the warmest readings, fewer than count if there are fewer readings
+	 */
+	public TemperatureReadings warmestReadings(LocalDate dateFrom, LocalDate dateTo, int count) {
+		return extremeReadings(data, dateFrom, dateTo, count, true); //O(k log k) k = count
+	}
+
+	/**
+	 * Find the k most extreme readings without visiting every reading in the range.
+	 * A queue holds ranges of days, ranked by their most extreme day, and single 
+	 * readings. Taking a range from the queue splits it around its most extreme day,
+	 * whose readings are queued on their own. No reading in a range is more extreme
+	 * than the range's own rank, so readings leave the queue in order.
+	 * 
+	 * @param data data set to search
+	 * @param dateFrom start date inclusive
+	 * @param dateTo end date inclusive
+	 * @param count largest number of readings to return
+	 * @param warmest true for the highest temperatures, false for the lowest
+	 * @return the most extreme readings, most extreme first
+	 */
+	private static TemperatureReadings extremeReadings(WeatherDataSet data, LocalDate dateFrom, LocalDate dateTo, int count, boolean warmest) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Count must not be negative");
+		}
+		WeatherDataColumns weather = data.weather; //O(1)
+		TemperatureReadings result = new TemperatureReadings(Math.min(count, weather.size())); //O(k)
+		PriorityQueue<Candidate> queue = new PriorityQueue<>(); //O(1)
+		offerDays(queue, data, dateFrom.toEpochDay(), dateTo.toEpochDay(), warmest); //O(1)
+
+		while (result.size() < count && !queue.isEmpty()) { //O(k) rounds
+			Candidate next = queue.poll(); //O(log k)
+			if (next.index >= 0) {
+				result.add(weather.epochDay(next.index), weather.hour(next.index), weather.tempTenths(next.index), "temperature"); //O(1)
+				continue;
+			}
+			offerDays(queue, data, next.fromDay, next.epochDay - 1, warmest); //O(log k)
+			offerDays(queue, data, next.epochDay + 1, next.toDay, warmest); //O(log k)
+			for (int i = findFirstIndexByDate(weather, next.epochDay); i < weather.size() && weather.epochDay(i) == next.epochDay; i++) { //O(log n + 24 log k)
+				int temp = weather.tempTenths(i);
+				queue.add(new Candidate(warmest ? -temp : temp, next.epochDay, i, 0, 0));
+			}
+		}
+		return result; //O(1)
+	}
+
+	//Queue a range of days, ranked by its most extreme day, if it has readings
+	private static void offerDays(PriorityQueue<Candidate> queue, WeatherDataSet data, long fromDay, long toDay, boolean warmest) {
+		long day = warmest ? data.extremes.highestDay(fromDay, toDay) : data.extremes.lowestDay(fromDay, toDay); //O(1)
+		if (day != RangeExtremes.NO_DAY) {
+			int rank = warmest ? -data.daily.max((int) day) : data.daily.min((int) day); //O(1)
+			queue.add(new Candidate(rank, day, -1, fromDay, toDay)); //O(log k)
+		}
+	}
+
+	/**
+	 * A reading, or a range of days ranked by its most extreme day, waiting in the
+	 * queue of {@link #extremeReadings}. Lower ranks are more extreme. On equal ranks
+	 * the earlier day comes first, and a range before the readings of its day.
+	 */
+	private static final class Candidate implements Comparable<Candidate> {
+		final int rank;
+		final long epochDay;
+		//Index of the reading, or -1 for a range of days
+		final int index;
+		final long fromDay;
+		final long toDay;
+
+		Candidate(int rank, long epochDay, int index, long fromDay, long toDay) {
+			this.rank = rank;
+			this.epochDay = epochDay;
+			this.index = index;
+			this.fromDay = fromDay;
+			this.toDay = toDay;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			if (rank != other.rank) {
+				return Integer.compare(rank, other.rank);
+			}
+			if (epochDay != other.epochDay) {
+				return Long.compare(epochDay, other.epochDay);
+			}
+			return Integer.compare(index, other.index);
+		}
 	}
-}
\ No newline at end of file
+}
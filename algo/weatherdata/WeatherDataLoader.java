@@ -0,0 +1,296 @@
+package algo.weatherdata;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses a CSV weather data file in parallel. The file is split into byte ranges
+ * that start and end on line breaks, each range is parsed on a ForkJoinPool worker
+ * into its own store, and the stores are joined in file order so the readings keep
+ * the order of the file.
+ * <p>
+ * Every range is streamed in fixed-size chunks, so the raw text of the file is
+ * never held in memory as a whole. Data appended to a file can be read on its own
+ * from the offset where the previous read ended.
+ */
+class WeatherDataLoader {
+
+    //Number of bytes read from the data file at a time
+    private static final int CHUNK_SIZE = 64 * 1024;
+    //Ranges smaller than this are not worth handing to another worker
+    private static final long MIN_RANGE_SIZE = 1024 * 1024;
+
+    private WeatherDataLoader() {
+    }
+
+    /**
+     * Parse a data file and add its readings to a store. If a line can not be parsed,
+     * the readings before it are still added and the parse error is thrown.
+     * @param path path to the data file
+     * @param target store to add the readings to
+     * @return number of bytes read, i.e. the size of the file when it was opened
+     * @throws IOException if there is a problem while reading the file
+     * @throws java.time.format.DateTimeParseException if a date or time can not be parsed
+     * @throws NumberFormatException if a temperature or quality code can not be parsed
+     */
+    static long load(Path path, WeatherDataStore target) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size(); //O(1)
+            int rangeCount = (int) Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), fileSize / MIN_RANGE_SIZE)); //O(1)
+            long[] bounds = splitOnLines(channel, fileSize, rangeCount); //O(p) p = number of ranges
+
+            List<RangeParser> ranges = new ArrayList<>(); //O(1)
+            for (int i = 0; i < rangeCount; i++) { //O(p)
+                ranges.add(new RangeParser(channel, bounds[i], bounds[i + 1]));
+            }
+            if (rangeCount == 1) {
+                ranges.get(0).compute(); //O(n), no need to involve the pool
+            } else {
+                ForkJoinTask.invokeAll(ranges); //O(n / p) with p workers
+            }
+
+            for (RangeParser range : ranges) { //O(n) copying, in file order
+                target.addAll(range.store);
+                if (range.error != null) { //Stop at the first bad line, like a sequential read would
+                    if (range.error instanceof UncheckedIOException) {
+                        throw ((UncheckedIOException) range.error).getCause();
+                    }
+                    throw range.error;
+                }
+            }
+            return fileSize;
+        }
+    }
+
+    /**
+     * Parse the complete lines of a data file from a byte offset and add the readings
+     * that are newer than the last reading in the store. A line that is not terminated
+     * yet, e.g. because the file is still being written, is left for the next call.
+     * If a line can not be parsed, the readings before it are still added and the
+     * parse error is thrown.
+     * @param path path to the data file
+     * @param offset byte offset to start reading at, must be the start of a line
+     * @param target store to add the readings to
+     * @return byte offset directly after the last complete line that was read
+     * @throws IOException if there is a problem while reading the file
+     * @throws java.time.format.DateTimeParseException if a date or time can not be parsed
+     * @throws NumberFormatException if a temperature or quality code can not be parsed
+     */
+    static long appendNewer(Path path, long offset, WeatherDataStore target) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long end = lastLineEnd(channel, offset, channel.size()); //O(line length)
+            RangeParser range = new RangeParser(channel, offset, end); //O(1)
+            int last = target.size() - 1; //O(1)
+            range.newerOnly = true; //O(1)
+            if (last >= 0) {
+                range.newerThan = target.epochDay(last) * 24L + target.hour(last); //O(1)
+            }
+            range.compute(); //O(k) k = bytes after offset, appended data is small so one thread is enough
+
+            target.addAll(range.store); //O(k)
+            if (range.error instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) range.error).getCause();
+            } else if (range.error != null) {
+                throw range.error;
+            }
+            return end;
+        }
+    }
+
+    /**
+     * Find the end of the last line break in a part of the file.
+     * @param channel the data file
+     * @param start first byte to look at
+     * @param end byte after the last byte to look at
+     * @return offset directly after the last line break, or start if there is none
+     * @throws IOException if there is a problem while reading the file
+     */
+    private static long lastLineEnd(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(256);
+        long position = end;
+        while (position > start) {
+            int length = (int) Math.min(probe.capacity(), position - start);
+            probe.clear().limit(length);
+            int read = 0;
+            while (read < length) {
+                int n = channel.read(probe, position - length + read);
+                if (n <= 0) {
+                    return start; //File shrank while reading
+                }
+                read += n;
+            }
+            for (int j = length - 1; j >= 0; j--) {
+                if (probe.get(j) == '\n') {
+                    return position - length + j + 1;
+                }
+            }
+            position -= length;
+        }
+        return start;
+    }
+
+    /**
+     * Find range boundaries close to equal size that all fall directly after a line break.
+     * @param channel the data file
+     * @param fileSize size of the data file
+     * @param rangeCount wanted number of ranges
+     * @return rangeCount + 1 boundaries, the first is 0 and the last is fileSize
+     * @throws IOException if there is a problem while reading the file
+     */
+    private static long[] splitOnLines(FileChannel channel, long fileSize, int rangeCount) throws IOException {
+        long[] bounds = new long[rangeCount + 1];
+        ByteBuffer probe = ByteBuffer.allocate(256);
+        for (int i = 1; i < rangeCount; i++) {
+            long position = Math.max(bounds[i - 1], fileSize * i / rangeCount);
+            bounds[i] = fileSize;
+            search:
+            while (position < fileSize) {
+                probe.clear();
+                int read = channel.read(probe, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int j = 0; j < read; j++) {
+                    if (probe.get(j) == '\n') {
+                        bounds[i] = position + j + 1;
+                        break search;
+                    }
+                }
+                position += read;
+            }
+        }
+        bounds[rangeCount] = fileSize;
+        return bounds;
+    }
+
+    /**
+     * Parses the lines in one byte range of the file into a local store.
+     */
+    private static class RangeParser extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient FileChannel channel;
+        private final long start;
+        private final long end;
+        private final transient WeatherDataParser parser = new WeatherDataParser();
+        final transient WeatherDataStore store = new WeatherDataStore();
+        //If set, only readings after newerThan (days since 1970-01-01 * 24 + hour) are
+        //kept and each kept reading moves newerThan forward
+        boolean newerOnly;
+        long newerThan = Long.MIN_VALUE;
+        //First error hit while parsing, parsing of the range stops there
+        RuntimeException error;
+
+        RangeParser(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                parseRange();
+            } catch (IOException e) {
+                error = new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+
+        private void parseRange() throws IOException {
+            byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE, Math.max(1, end - start))]; //O(1)
+            ByteBuffer buffer = ByteBuffer.wrap(chunk); //O(1)
+            byte[] carry = new byte[128]; //Holds a line split between two chunks
+            int carryLength = 0; //O(1)
+            long position = start; //O(1)
+
+            while (position < end) { //O(k / CHUNK_SIZE) k = size of range
+                buffer.clear();
+                buffer.limit((int) Math.min(chunk.length, end - position));
+                int read = channel.read(buffer, position); //Positional reads are safe to share between workers
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+
+                int lineStart = 0; //O(1)
+                for (int i = 0; i < read; i++) { //O(CHUNK_SIZE)
+                    if (chunk[i] != '\n') {
+                        continue;
+                    }
+                    if (carryLength > 0) {
+                        carry = appendBytes(carry, carryLength, chunk, lineStart, i - lineStart); //O(1)
+                        carryLength += i - lineStart; //O(1)
+                        parseLine(carry, 0, carryLength); //O(1)
+                        carryLength = 0; //O(1)
+                    } else {
+                        parseLine(chunk, lineStart, i - lineStart); //O(1)
+                    }
+                    lineStart = i + 1; //O(1)
+                }
+                carry = appendBytes(carry, carryLength, chunk, lineStart, read - lineStart); //O(1)
+                carryLength += read - lineStart; //O(1)
+            }
+            if (carryLength > 0) { //Last line without a trailing newline
+                parseLine(carry, 0, carryLength); //O(1)
+            }
+        }
+
+        /**
+         * Parses a single line of the data file and adds it to the store.
+         * Blank lines are skipped.
+         * @param buffer bytes holding the line
+         * @param offset index of the first byte of the line
+         * @param length number of bytes in the line, excluding the line break
+         */
+        private void parseLine(byte[] buffer, int offset, int length) {
+            if (length > 0 && buffer[offset + length - 1] == '\r') { //O(1)
+                length--; //O(1)
+            }
+            if (length == 0) { //O(1)
+                return;
+            }
+
+            // Incoming format -> {Datum;Tid (UTC);Lufttemperatur;Kvalitet}
+            parser.parse(buffer, offset, length); //O(1)
+
+            if (newerOnly) {
+                long epochHour = parser.epochDay * 24L + parser.hour; //O(1)
+                if (epochHour <= newerThan) { //Already loaded
+                    return;
+                }
+                newerThan = epochHour; //O(1)
+            }
+            store.add(parser.epochDay, parser.hour, parser.tempTenths, parser.approved); //O(1)
+        }
+    }
+
+    /**
+     * Appends bytes to the end of a buffer, growing the buffer if it is too small.
+     * @param target buffer to append to
+     * @param targetLength number of bytes already used in target
+     * @param source buffer to copy from
+     * @param offset first byte in source to copy
+     * @param length number of bytes to copy
+     * @return target, or a larger copy of it if it had to grow
+     */
+    private static byte[] appendBytes(byte[] target, int targetLength, byte[] source, int offset, int length) {
+        if (targetLength + length > target.length) { //O(1)
+            target = Arrays.copyOf(target, Math.max(target.length * 2, targetLength + length)); //O(k) k = line length
+        }
+        System.arraycopy(source, offset, target, targetLength, length); //O(k) k = line length
+        return target; //O(1)
+    }
+}
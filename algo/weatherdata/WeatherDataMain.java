@@ -1,27 +1,126 @@
 package algo.weatherdata;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
  * Simple application for retrieving and presenting temperature 
  * data from a weather station file.
  */
 public class WeatherDataMain {
 
+	//Binary snapshot written next to the data file, e.g. smhi-opendata.csv.wds
+	private static final String SNAPSHOT_SUFFIX = WeatherDataSnapshot.FILE_SUFFIX;
+
+	//Keep reading lines appended to the data file while the program runs
+	private static final String WATCH_OPTION = "--watch";
+
+	//Answer queries over HTTP instead of showing the menu, e.g. --http=8080
+	private static final String HTTP_OPTION = "--http=";
+
+	private static final String USAGE = "Usage: WeatherDataMain [data file] [" + WATCH_OPTION + "] [" + HTTP_OPTION + "PORT]";
+
 	/**
 	 * Program entry point.
 	 * 
-	 * @param args optional argument for path to weather data file
+	 * @param args optional path to weather data file, optionally --watch to add
+	 *        lines appended to the file while the program runs, and optionally
+	 *        --http=PORT to serve queries over HTTP until the program is stopped
 	 */
 	public static void main(String[] args) {
 		WeatherDataHandler weatherData = new WeatherDataHandler();
 		String fileName = "smhi-opendata.csv";
-		if(args.length > 0) {
-			fileName = args[0];
-		}		
+		boolean watch = false;
+		int httpPort = -1;
+		for (String arg : args) {
+			if (arg.equals(WATCH_OPTION)) {
+				watch = true;
+			} else if (arg.startsWith(HTTP_OPTION)) {
+				httpPort = parsePort(arg.substring(HTTP_OPTION.length()));
+				if (httpPort < 0) {
+					System.out.println("Invalid port: " + arg);
+					System.out.println(USAGE);
+					return;
+				}
+			} else {
+				fileName = arg;
+			}
+		}
 		try {				
-			weatherData.loadData(fileName);
-			new WeatherDataUI(weatherData).startUI();
+			loadWithSnapshot(weatherData, fileName);
+			//A snapshot is never appended to, so there is nothing to watch
+			WeatherDataWatcher watcher = watch && !fileName.endsWith(SNAPSHOT_SUFFIX) ? new WeatherDataWatcher(weatherData, fileName) : null;
+			if (httpPort >= 0) {
+				//The server keeps the program running after main returns
+				WeatherDataServer server = new WeatherDataServer(weatherData, httpPort);
+				System.out.println("Serving weather data on http://localhost:" + server.port() + "/");
+				return;
+			}
+			try {
+				new WeatherDataUI(weatherData).startUI();
+			} finally {
+				if (watcher != null) {
+					watcher.close();
+				}
+			}
 		} catch (Exception e) {
 			System.out.println("Closing program ...");
 		}		
 	}
+
+	/**
+	 * Parse the port of the HTTP option.
+	 * 
+	 * @param port port number, 0 picks a free port
+	 * @return the port, or -1 if it is not a number from 0 to 65535
+	 */
+	private static int parsePort(String port) {
+		try {
+			int number = Integer.parseInt(port);
+			return number >= 0 && number <= 65535 ? number : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Load weather data, preferring a binary snapshot next to the data file.
+	 * The snapshot is used if it is at least as new as the data file, otherwise
+	 * the data file is parsed and a fresh snapshot is written for the next start.
+	 * If a line of the data file can not be parsed, no snapshot is written and an
+	 * old one is removed, so the next start parses the data file again.
+	 * Either way, appending to the handler later only reads the lines added to the
+	 * data file after it was loaded.
+	 * 
+	 * @param weatherData handler to load the data into
+	 * @param fileName path to weather data file
+	 * @throws IOException if the data file can not be read
+	 */
+	private static void loadWithSnapshot(WeatherDataHandler weatherData, String fileName) throws IOException {
+		Path dataFile = Paths.get(fileName);
+		Path snapshotFile = Paths.get(fileName + SNAPSHOT_SUFFIX);
+		if (fileName.endsWith(SNAPSHOT_SUFFIX)) {
+			weatherData.loadData(fileName);
+			return;
+		}
+		//Taken before the check, so lines appended after it are left for appendData
+		long dataSize = Files.exists(dataFile) ? Files.size(dataFile) : 0;
+		if (WeatherDataSnapshot.isUpToDate(snapshotFile, dataFile)) {
+			weatherData.loadData(snapshotFile.toString());
+			weatherData.resumeAppend(fileName, dataSize); //--watch only reads lines added from now on
+			return;
+		}
+		boolean complete = weatherData.loadData(fileName);
+		try {
+			if (complete) {
+				weatherData.saveSnapshot(snapshotFile.toString());
+			} else {
+				Files.deleteIfExists(snapshotFile); //A partial snapshot would hide the lines that failed on every start
+			}
+		} catch (IOException e) {
+			System.out.println("Could not update snapshot: " + e.getLocalizedMessage());
+		}
+	}
 }
\ No newline at end of file
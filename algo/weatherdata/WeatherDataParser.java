@@ -0,0 +1,141 @@
+package algo.weatherdata;
+
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Byte level parser for lines in a weather station file.
+ * Decodes {Datum;Tid (UTC);Lufttemperatur;Kvalitet} straight from the raw bytes
+ * without creating any intermediate Strings. The fields of the last parsed line
+ * are kept in the parser so that one instance can be reused for every line.
+ */
+class WeatherDataParser {
+
+    //Cumulative days before each month in a non leap year
+    private static final int[] DAYS_BEFORE_MONTH = {0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334};
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    //Days from 0000-03-01 to 1970-01-01 in the proleptic Gregorian calendar
+    private static final int DAYS_0000_TO_1970 = 719468;
+
+    int epochDay;
+    int hour;
+    int minute;
+    int second;
+    int tempTenths;
+    boolean approved;
+
+    /**
+     * Parse one line. The format is fixed width up to the temperature:
+     * {@code YYYY-MM-DD;HH:MM:SS;}, followed by a temperature with at most one
+     * decimal and a quality code.
+     * @param buffer bytes holding the line
+     * @param offset index of the first byte of the line
+     * @param length number of bytes in the line, excluding the line break
+     * @throws DateTimeParseException if the date or time can not be parsed
+     * @throws NumberFormatException if the temperature or quality code can not be parsed
+     */
+    void parse(byte[] buffer, int offset, int length) {
+        if (length < 22 || buffer[offset + 4] != '-' || buffer[offset + 7] != '-' || buffer[offset + 10] != ';') { //O(1)
+            throw dateError(buffer, offset, length, 0);
+        }
+        int year = digits(buffer, offset, 4); //O(1)
+        int month = digits(buffer, offset + 5, 2); //O(1)
+        int day = digits(buffer, offset + 8, 2); //O(1)
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) { //O(1)
+            throw dateError(buffer, offset, length, 0);
+        }
+
+        if (buffer[offset + 13] != ':' || buffer[offset + 16] != ':' || buffer[offset + 19] != ';') { //O(1)
+            throw dateError(buffer, offset, length, 11);
+        }
+        hour = digits(buffer, offset + 11, 2); //O(1)
+        minute = digits(buffer, offset + 14, 2); //O(1)
+        second = digits(buffer, offset + 17, 2); //O(1)
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) { //O(1)
+            throw dateError(buffer, offset, length, 11);
+        }
+        epochDay = toEpochDay(year, month, day); //O(1)
+
+        int end = offset + length; //O(1)
+        int i = offset + 20; //O(1)
+        boolean negative = i < end && buffer[i] == '-'; //O(1)
+        if (negative) {
+            i++;
+        }
+        int value = 0, digitCount = 0; //O(1)
+        while (i < end && isDigit(buffer[i])) { //O(1) -> at most a handful of digits
+            value = value * 10 + (buffer[i++] - '0');
+            digitCount++;
+        }
+        value *= 10; //Fixed point, tenths of a degree
+        if (i < end && buffer[i] == '.') { //O(1)
+            i++;
+            if (i < end && isDigit(buffer[i])) {
+                value += buffer[i++] - '0';
+                digitCount++;
+            }
+        }
+        if (digitCount == 0 || i >= end || buffer[i] != ';') { //O(1)
+            throw new NumberFormatException("Invalid temperature in line: " + text(buffer, offset, length));
+        }
+        tempTenths = negative ? -value : value; //O(1)
+
+        i++; //O(1)
+        if (i >= end) { //O(1)
+            throw new NumberFormatException("Missing quality code in line: " + text(buffer, offset, length));
+        }
+        approved = buffer[i] == 'G' && i + 1 == end; //O(1)
+    }
+
+    /**
+     * Converts a date to the number of days since 1970-01-01, using the same
+     * proleptic Gregorian calendar as {@code LocalDate.toEpochDay()}.
+     * @param year the year
+     * @param month the month, 1-12
+     * @param day the day of month
+     * @return days since the epoch
+     */
+    static int toEpochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year; //Years start in March so the leap day is last
+        int era = Math.floorDiv(y, 400); //O(1)
+        int yearOfEra = y - era * 400; //O(1)
+        int dayOfYear = DAYS_BEFORE_MONTH[month - 1] + day - 1 + (month > 2 ? -59 : 306); //O(1)
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear; //O(1)
+        return era * 146097 + dayOfEra - DAYS_0000_TO_1970; //O(1)
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    /**
+     * Read a fixed number of decimal digits.
+     * @return the value, or -1 if any of the bytes is not a digit
+     */
+    private static int digits(byte[] buffer, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            if (!isDigit(buffer[i])) {
+                return -1;
+            }
+            value = value * 10 + (buffer[i] - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static DateTimeParseException dateError(byte[] buffer, int offset, int length, int errorIndex) {
+        return new DateTimeParseException("Invalid date or time", text(buffer, offset, length), errorIndex);
+    }
+
+    //Only used to build error messages
+    private static String text(byte[] buffer, int offset, int length) {
+        return new String(buffer, offset, length, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,218 @@
+package algo.weatherdata;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server answering weather data queries with JSON. Every query takes
+ * the period as two parameters, e.g. {@code GET /averages?from=2000-01-01&to=2000-01-03}:
+ * <ul>
+ * <li>{@code /averages} average temperature for each day</li>
+ * <li>{@code /missing} number of missing readings for each day</li>
+ * <li>{@code /approved} percentage of approved readings</li>
+ * <li>{@code /average} average temperature for the whole period</li>
+ * </ul>
+ * Every request runs on its own virtual thread when the JDK has them, otherwise on
+ * a fixed pool of platform threads. Requests arriving at the same time are grouped
+ * by a {@link QueryBatcher}, so overlapping periods are only queried once, and the
+ * groups run in parallel on the common ForkJoinPool. Queries do not lock the
+ * handler and only hold the lock on its {@link QueryCache} to look up or store a
+ * result, so a slow query does not hold up the others.
+ */
+public class WeatherDataServer implements Closeable {
+
+    //Platform threads per core when virtual threads are not available
+    private static final int THREADS_PER_CORE = 4;
+
+    private final QueryBatcher batcher;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Create a server and start listening.
+     * @param handler handler with the data to query
+     * @param port port to listen on, 0 picks a free port
+     * @throws IOException if the port can not be bound
+     */
+    public WeatherDataServer(WeatherDataHandler handler, int port) throws IOException {
+        this.batcher = new QueryBatcher(handler, 0); //Batch what arrives while a batch runs, without added latency
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = requestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/averages", exchange -> respond(exchange, this::averagesJson));
+        server.createContext("/missing", exchange -> respond(exchange, this::missingJson));
+        server.createContext("/approved", exchange -> respond(exchange, this::approvedJson));
+        server.createContext("/average", exchange -> respond(exchange, this::averageJson));
+        server.start();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop the server. Requests that are being answered are finished first.
+     */
+    @Override
+    public void close() {
+        server.stop(1); //Seconds to wait for running requests
+        executor.shutdown();
+        batcher.close();
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task. Virtual threads are
+     * looked up by reflection so the server also runs on JDKs without them.
+     * @return executor for requests
+     */
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Runtime.getRuntime().availableProcessors() * THREADS_PER_CORE;
+            return Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task, "weather-data-request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Answer a request with the JSON for its period, or with an error.
+     * @param exchange the request
+     * @param query creates the JSON for a period
+     * @throws IOException if the response can not be sent
+     */
+    private static void respond(HttpExchange exchange, BiFunction<LocalDate, LocalDate, String> query) throws IOException {
+        try (exchange) {
+            int status = 200;
+            String body;
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                status = 405;
+                body = errorJson("Only GET is supported");
+            } else {
+                try {
+                    String parameters = exchange.getRequestURI().getRawQuery(); //O(1)
+                    body = query.apply(dateParameter(parameters, "from"), dateParameter(parameters, "to")); //O(d) d = days in range
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    status = 400;
+                    body = errorJson(e.getMessage());
+                } catch (RuntimeException e) {
+                    status = 500;
+                    body = errorJson("Query failed: " + e);
+                }
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Find a date parameter in a query string.
+     * @param parameters raw query string, e.g. from=2000-01-01&to=2000-01-03, may be null
+     * @param name name of the parameter
+     * @return the date
+     * @throws IllegalArgumentException if the parameter is missing
+     * @throws DateTimeParseException if the parameter is not a date (YYYY-MM-DD)
+     */
+    private static LocalDate dateParameter(String parameters, String name) {
+        if (parameters != null) {
+            for (String parameter : parameters.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0 && parameter.substring(0, equals).equals(name)) {
+                    return LocalDate.parse(URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        throw new IllegalArgumentException("Missing parameter " + name + " (YYYY-MM-DD)");
+    }
+
+    //{"from":"2000-01-01","to":"2000-01-03","days":[{"date":"2000-01-01","average":0.42,"count":24},...]}
+    private String averagesJson(LocalDate dateFrom, LocalDate dateTo) {
+        DailyAverages result = batcher.dailyAverages(dateFrom, dateTo); //O(d) d = days in range
+        StringBuilder json = periodJson(new StringBuilder(64 + result.size() * 48), dateFrom, dateTo).append(",\"days\":[");
+        for (int i = 0; i < result.size(); i++) { //O(d)
+            json.append(i == 0 ? "{\"date\":\"" : ",{\"date\":\"");
+            ResultFormat.appendDate(json, result.epochDay(i)).append("\",\"average\":");
+            ResultFormat.appendHundredths(json, result.averageHundredths(i)).append(",\"count\":").append(result.count(i)).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    //{"from":"2000-01-01","to":"2000-01-03","days":[{"date":"2000-01-02","missing":1},...]}
+    private String missingJson(LocalDate dateFrom, LocalDate dateTo) {
+        DailyMissingValues result = batcher.dailyMissingValues(dateFrom, dateTo); //O(d) d = days in range
+        StringBuilder json = periodJson(new StringBuilder(64 + result.size() * 32), dateFrom, dateTo).append(",\"days\":[");
+        for (int i = 0; i < result.size(); i++) { //O(d)
+            json.append(i == 0 ? "{\"date\":\"" : ",{\"date\":\"");
+            ResultFormat.appendDate(json, result.epochDay(i)).append("\",\"missing\":").append(result.missing(i)).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    //{"from":"2000-01-01","to":"2000-01-03","approved":23,"total":70,"percentage":32.86}, null without readings
+    private String approvedJson(LocalDate dateFrom, LocalDate dateTo) {
+        ApprovedPercentage result = batcher.approvedPercentage(dateFrom, dateTo); //O(log n)
+        StringBuilder json = periodJson(new StringBuilder(96), dateFrom, dateTo);
+        json.append(",\"approved\":").append(result.approved()).append(",\"total\":").append(result.total()).append(",\"percentage\":");
+        if (result.total() > 0) {
+            ResultFormat.appendHundredths(json, result.percentageHundredths());
+        } else {
+            json.append("null");
+        }
+        return json.append('}').toString();
+    }
+
+    //{"from":"2000-01-01","to":"2000-01-03","count":70,"average":1.8}, null without readings
+    private String averageJson(LocalDate dateFrom, LocalDate dateTo) {
+        PeriodAverage result = batcher.periodAverage(dateFrom, dateTo); //O(log n)
+        StringBuilder json = periodJson(new StringBuilder(80), dateFrom, dateTo);
+        json.append(",\"count\":").append(result.count()).append(",\"average\":");
+        if (result.count() > 0) {
+            ResultFormat.appendHundredths(json, result.averageHundredths());
+        } else {
+            json.append("null");
+        }
+        return json.append('}').toString();
+    }
+
+    //Opens a JSON object with the period of the query
+    private static StringBuilder periodJson(StringBuilder json, LocalDate dateFrom, LocalDate dateTo) {
+        return json.append("{\"from\":\"").append(dateFrom).append("\",\"to\":\"").append(dateTo).append('"');
+    }
+
+    private static String errorJson(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":\"");
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append("\"}").toString();
+    }
+}
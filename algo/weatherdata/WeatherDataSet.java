@@ -0,0 +1,66 @@
+package algo.weatherdata;
+
+/**
+ * One consistent version of the loaded weather data together with its indexes.
+ * A data set is never changed once it has been published, so any number of threads
+ * can query it without locking while the next version is being built.
+ */
+final class WeatherDataSet {
+
+    static final WeatherDataSet EMPTY = of(0, new WeatherDataStore().freeze(), Integer.MAX_VALUE);
+
+    //Increases with every data set published by a handler, tells cached results apart
+    final long version;
+    //Readings, a frozen WeatherDataStore, a memory mapped WeatherDataSnapshot or CompressedColumns
+    final WeatherDataColumns weather;
+    //Per-day aggregates of weather
+    final DailySummary daily;
+    //Totals over ranges of readings in weather, prefix sums for readings on the heap, otherwise a zone map
+    final ReadingSums sums;
+    //Per-month and per-year rollups of daily
+    final CalendarSummary calendar;
+    //Range lowest and highest temperature over daily
+    final RangeExtremes extremes;
+
+    WeatherDataSet(long version, WeatherDataColumns weather, DailySummary daily, ReadingSums sums) {
+        this.version = version;
+        this.weather = weather;
+        this.daily = daily;
+        this.sums = sums;
+        this.calendar = CalendarSummary.build(daily); //O(d) d = days in the data
+        this.extremes = RangeExtremes.build(daily); //O(d log d)
+    }
+
+    /**
+     * Estimate the heap used by the data set. Readings in a memory mapped snapshot
+     * are not on the heap and not counted.
+     * @return estimated size in bytes
+     */
+    long estimatedHeapBytes() {
+        int readings = weather.size(); //O(1)
+        int days = daily.days(); //O(1)
+        long columns = weather instanceof WeatherDataSnapshot ? 0
+                : weather instanceof CompressedColumns ? ((CompressedColumns) weather).heapBytes()
+                : readings * 7L + readings / 8; //Day, hour, temperature and approved bit
+        long totals = sums instanceof PrefixSums ? (readings + 1L) * 12 //Temperature and approved prefix sums
+                : sums instanceof ZoneMap ? ((ZoneMap) sums).heapBytes() : 0; //Counted with compressed readings
+        long summary = days * 16L; //Sum, count, min, max and approved count per day
+        long tables = days * 8L * (32 - Integer.numberOfLeadingZeros(Math.max(days, 1))); //Lowest and highest day per level
+        return columns + totals + summary + tables;
+    }
+
+    /**
+     * Build the indexes for read only readings. Readings in a memory mapped snapshot
+     * get a zone map instead of prefix sums, which would take more heap than the
+     * readings they were mapped to keep off the heap.
+     * @param version version of the data
+     * @param weather readings that are not changed any more
+     * @param parallelThreshold fewest readings to aggregate in parallel
+     * @return data set with fresh indexes
+     */
+    static WeatherDataSet of(long version, WeatherDataColumns weather, int parallelThreshold) {
+        DailySummary daily = DailySummary.build(weather, parallelThreshold); //O(n / p) p = number of cores
+        ReadingSums sums = weather instanceof WeatherDataSnapshot ? ZoneMap.build(weather) : PrefixSums.build(weather); //O(n)
+        return new WeatherDataSet(version, weather, daily, sums); //O(d log d) d = days in the data
+    }
+}
@@ -0,0 +1,192 @@
+package algo.weatherdata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary columnar snapshot of weather readings, read through a memory mapped file.
+ * The columns are queried directly in the mapped buffer, so opening a snapshot
+ * costs the same no matter how many readings it holds and the readings never
+ * occupy the Java heap.
+ * <p>
+ * File layout (little endian):
+ * <pre>
+ * int     magic "WDS1"
+ * int     number of readings n
+ * int[n]  epoch days
+ * short[n] temperatures in tenths of a degree
+ * byte[n] hours
+ * byte[(n + 7) / 8] approved flags, one bit per reading
+ * </pre>
+ */
+class WeatherDataSnapshot implements WeatherDataColumns {
+
+    static final int MAGIC = 0x31534457; //"WDS1" read as a little endian int
+    //Suffix of a snapshot written next to its data file, e.g. smhi-opendata.csv.wds
+    static final String FILE_SUFFIX = ".wds";
+    private static final int HEADER_SIZE = 8;
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final int temperatureOffset;
+    private final int hourOffset;
+    private final int approvedOffset;
+
+    private WeatherDataSnapshot(MappedByteBuffer buffer, int size) {
+        this.buffer = buffer;
+        this.size = size;
+        this.temperatureOffset = HEADER_SIZE + size * 4;
+        this.hourOffset = temperatureOffset + size * 2;
+        this.approvedOffset = hourOffset + size;
+    }
+
+    /**
+     * Map a snapshot file into memory.
+     * @param path path to the snapshot file
+     * @return snapshot backed by the mapped file
+     * @throws IOException if the file can not be read or is not a snapshot
+     */
+    static WeatherDataSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Not a weather data snapshot: " + path);
+            }
+            //The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            int size = buffer.getInt(4);
+            if (buffer.getInt(0) != MAGIC || size < 0 || fileSize != fileSize(size)) {
+                throw new IOException("Not a weather data snapshot: " + path);
+            }
+            return new WeatherDataSnapshot(buffer, size);
+        }
+    }
+
+    /**
+     * Write readings to a snapshot file, replacing any existing file.
+     * @param data readings to write
+     * @param path path to the snapshot file
+     * @throws IOException if the file can not be written
+     */
+    static void write(WeatherDataColumns data, Path path) throws IOException {
+        int size = data.size();
+        if (fileSize(size) > Integer.MAX_VALUE) {
+            throw new IOException("Too many readings for a snapshot: " + size);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC).putInt(size);
+            for (int i = 0; i < size; i++) {
+                flushIfFull(channel, out, 4);
+                out.putInt(data.epochDay(i));
+            }
+            for (int i = 0; i < size; i++) {
+                flushIfFull(channel, out, 2);
+                out.putShort((short) data.tempTenths(i));
+            }
+            for (int i = 0; i < size; i++) {
+                flushIfFull(channel, out, 1);
+                out.put((byte) data.hour(i));
+            }
+            for (int i = 0; i < size; i += 8) {
+                int bits = 0;
+                for (int bit = 0; bit < 8 && i + bit < size; bit++) {
+                    if (data.isApproved(i + bit)) {
+                        bits |= 1 << bit;
+                    }
+                }
+                flushIfFull(channel, out, 1);
+                out.put((byte) bits);
+            }
+            flush(channel, out);
+        }
+    }
+
+    /**
+     * Check whether a file starts with the snapshot magic number.
+     * @param path file to check
+     * @return true if the file looks like a snapshot
+     * @throws IOException if the file can not be read
+     */
+    static boolean isSnapshot(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining() && channel.read(magic) != -1) {
+                //Keep reading until the magic number is complete or the file ends
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Check whether a snapshot can be loaded instead of the data file it was
+     * written from, i.e. it exists and is at least as new as the data file.
+     * @param snapshot the snapshot file
+     * @param dataFile the data file
+     * @return true if the snapshot is up to date
+     * @throws IOException if the modification times can not be read
+     */
+    static boolean isUpToDate(Path snapshot, Path dataFile) throws IOException {
+        return Files.exists(snapshot) && Files.getLastModifiedTime(snapshot).compareTo(Files.getLastModifiedTime(dataFile)) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int epochDay(int index) {
+        return buffer.getInt(HEADER_SIZE + checkIndex(index) * 4);
+    }
+
+    @Override
+    public int hour(int index) {
+        return buffer.get(hourOffset + checkIndex(index));
+    }
+
+    @Override
+    public int tempTenths(int index) {
+        return buffer.getShort(temperatureOffset + checkIndex(index) * 2);
+    }
+
+    @Override
+    public boolean isApproved(int index) {
+        return (buffer.get(approvedOffset + (checkIndex(index) >>> 3)) & (1 << (index & 7))) != 0;
+    }
+
+    //Offsets into the buffer are only valid for indexes within the snapshot
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return index;
+    }
+
+    private static long fileSize(long size) {
+        return HEADER_SIZE + size * 7 + (size + 7) / 8;
+    }
+
+    private static void flushIfFull(FileChannel channel, ByteBuffer out, int needed) throws IOException {
+        if (out.remaining() < needed) {
+            flush(channel, out);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+}
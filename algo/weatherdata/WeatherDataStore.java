@@ -0,0 +1,227 @@
+package algo.weatherdata;
+
+import java.util.Arrays;
+
+/**
+ * Columnar storage for weather readings. Every field is kept in its own primitive
+ * array so that a reading costs a few bytes instead of a full object, and range
+ * scans walk contiguous memory.
+ * <p>
+ * Readings are only ever added at the end. A {@link #freeze() frozen} copy shares
+ * the arrays but keeps its own size, so it can be read by other threads while
+ * readings are still being added to this store.
+ */
+class WeatherDataStore implements WeatherDataColumns {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    //Days since 1970-01-01
+    private int[] epochDays;
+    //Hour of day (UTC), 0-23
+    private byte[] hours;
+    //Air temperature in tenths of a degree Celsius
+    private short[] temperatures;
+    //Packed bit set, bit i is set for readings with quality code G
+    private int[] approved;
+    private int size;
+    private final boolean frozen;
+
+    WeatherDataStore() {
+        this(new int[INITIAL_CAPACITY], new byte[INITIAL_CAPACITY], new short[INITIAL_CAPACITY],
+                new int[INITIAL_CAPACITY / 32], 0, false);
+    }
+
+    private WeatherDataStore(int[] epochDays, byte[] hours, short[] temperatures, int[] approved, int size, boolean frozen) {
+        this.epochDays = epochDays;
+        this.hours = hours;
+        this.temperatures = temperatures;
+        this.approved = approved;
+        this.size = size;
+        this.frozen = frozen;
+    }
+
+    /**
+     * Add a reading to the end of the store.
+     * @param epochDay days since 1970-01-01
+     * @param hour hour of day (UTC)
+     * @param tempTenths air temperature in tenths of a degree Celsius
+     * @param isApproved true if the reading has quality code G
+     */
+    void add(int epochDay, int hour, int tempTenths, boolean isApproved) {
+        ensureCapacity(size + 1); //O(1) amortized
+        epochDays[size] = epochDay; //O(1)
+        hours[size] = (byte) hour; //O(1)
+        temperatures[size] = (short) tempTenths; //O(1)
+        if (isApproved) {
+            approved[size >>> 5] |= 1 << size; //O(1)
+        }
+        size++; //O(1)
+    }
+
+    /**
+     * Add all readings of another store to the end of this store.
+     * @param other store to copy readings from
+     */
+    void addAll(WeatherDataStore other) {
+        int newSize = size + other.size; //O(1)
+        ensureCapacity(newSize); //O(n) when growing
+        System.arraycopy(other.epochDays, 0, epochDays, size, other.size); //O(k) k = size of other
+        System.arraycopy(other.hours, 0, hours, size, other.size); //O(k)
+        System.arraycopy(other.temperatures, 0, temperatures, size, other.size); //O(k)
+        for (int i = 0; i < other.size; i++) { //O(k)
+            if (other.isApproved(i)) {
+                approved[(size + i) >>> 5] |= 1 << (size + i);
+            }
+        }
+        size = newSize; //O(1)
+    }
+
+    /**
+     * Make sure the readings are sorted by date and hour with one reading per hour,
+     * as searches by date expect, e.g. after loading several exports one after the
+     * other. Checking takes a single pass. Only if a reading is earlier than the one
+     * before are the readings sorted, with a stable radix sort on the hour since
+     * 1970-01-01. Of readings with the same date and hour, the one added last is kept.
+     * <p>
+     * Reordered readings are written to new arrays, so frozen copies of the store
+     * keep the readings they had.
+     * @return number of repeated readings that were removed
+     */
+    int sortByTime() {
+        if (frozen) {
+            throw new IllegalStateException("A frozen store can not be changed");
+        }
+        boolean sorted = true, unique = true;
+        for (int i = 1; i < size; i++) { //O(n)
+            long previous = epochDays[i - 1] * 24L + hours[i - 1];
+            long time = epochDays[i] * 24L + hours[i];
+            sorted &= previous <= time;
+            unique &= previous != time;
+        }
+        if (sorted && unique) {
+            return 0; //O(1)
+        }
+
+        long[] times = new long[size];
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) { //O(n)
+            times[i] = epochDays[i] * 24L + hours[i];
+            order[i] = i;
+        }
+        if (!sorted) {
+            radixSort(times, order); //O(n)
+        }
+
+        int[] sortedDays = new int[epochDays.length];
+        byte[] sortedHours = new byte[hours.length];
+        short[] sortedTemperatures = new short[temperatures.length];
+        int[] sortedApproved = new int[approved.length];
+        int kept = 0;
+        for (int i = 0; i < size; i++) { //O(n)
+            if (i + 1 < size && times[i + 1] == times[i]) {
+                continue; //A later reading for the same hour follows
+            }
+            int from = order[i];
+            sortedDays[kept] = epochDays[from];
+            sortedHours[kept] = hours[from];
+            sortedTemperatures[kept] = temperatures[from];
+            if (isApproved(from)) {
+                sortedApproved[kept >>> 5] |= 1 << kept;
+            }
+            kept++;
+        }
+        epochDays = sortedDays;
+        hours = sortedHours;
+        temperatures = sortedTemperatures;
+        approved = sortedApproved;
+        int removed = size - kept;
+        size = kept;
+        return removed;
+    }
+
+    /**
+     * Sorts times ascending, one byte at a time from the lowest, and moves the
+     * indexes along with them. Equal times keep their order.
+     * @param times hours since 1970-01-01 of the readings
+     * @param order index of the reading of each time
+     */
+    private static void radixSort(long[] times, int[] order) {
+        int length = times.length;
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (long time : times) { //O(n)
+            min = Math.min(min, time);
+            max = Math.max(max, time);
+        }
+        long range = max - min;
+        long[] timeBuffer = new long[length];
+        int[] orderBuffer = new int[length];
+        int[] counts = new int[257];
+        //Three passes for a century of hourly readings
+        for (int shift = 0; shift < 64 && (range >>> shift) != 0; shift += 8) { //O(n) per pass
+            Arrays.fill(counts, 0);
+            for (long time : times) {
+                counts[(int) (((time - min) >>> shift) & 0xFF) + 1]++;
+            }
+            for (int digit = 0; digit < 256; digit++) {
+                counts[digit + 1] += counts[digit];
+            }
+            for (int i = 0; i < length; i++) {
+                int at = counts[(int) (((times[i] - min) >>> shift) & 0xFF)]++;
+                timeBuffer[at] = times[i];
+                orderBuffer[at] = order[i];
+            }
+            System.arraycopy(timeBuffer, 0, times, 0, length);
+            System.arraycopy(orderBuffer, 0, order, 0, length);
+        }
+    }
+
+    /**
+     * Returns a read only copy of the store as it is now. The copy shares the arrays
+     * of this store, which is safe because this store only writes past the end of the
+     * copy, and moves to new arrays when it grows.
+     * @return a frozen copy with the current readings
+     */
+    WeatherDataStore freeze() {
+        return new WeatherDataStore(epochDays, hours, temperatures, approved, size, true); //O(1)
+    }
+
+    //Grow all arrays to hold at least the given number of readings
+    private void ensureCapacity(int capacity) {
+        if (frozen) {
+            throw new IllegalStateException("A frozen store can not be changed");
+        }
+        if (capacity <= epochDays.length) {
+            return;
+        }
+        capacity = Math.max(capacity, epochDays.length * 2);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        hours = Arrays.copyOf(hours, capacity);
+        temperatures = Arrays.copyOf(temperatures, capacity);
+        approved = Arrays.copyOf(approved, (capacity + 31) >>> 5);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int epochDay(int index) {
+        return epochDays[index];
+    }
+
+    @Override
+    public int hour(int index) {
+        return hours[index];
+    }
+
+    @Override
+    public int tempTenths(int index) {
+        return temperatures[index];
+    }
+
+    @Override
+    public boolean isApproved(int index) {
+        return (approved[index >>> 5] & (1 << index)) != 0;
+    }
+}
@@ -2,7 +2,6 @@ package algo.weatherdata;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
-import java.util.List;
 import java.util.Scanner;
 /**
  * Command based UI for a simple Weather Data application.
@@ -29,7 +28,7 @@ public class WeatherDataUI {
         System.out.println("** Weather Data **");
 
         while (!quit) {
-            input = getNumberInput(_scanner, 1, 4, getMainMenu());
+            input = getNumberInput(_scanner, 1, 5, getMainMenu());
 
             switch (input) {
                 case 1:
@@ -43,6 +42,9 @@ public class WeatherDataUI {
                     break;
                 case 4:               	
                     quit = true;
+                    break;
+                case 5:
+                	periodAverageTemperature();
             }
         }
         //Close scanner to free resources
@@ -111,7 +113,7 @@ public class WeatherDataUI {
         System.out.print("End date (will be included)\n");
         LocalDate dateTo = getDateInput();
                        
-        presentResult(_weatherData.averageTemperatures(dateFrom, dateTo));
+        presentResult(_weatherData.dailyAverages(dateFrom, dateTo));
     }
     /**
      * Query user for two dates and present the dates within the period
@@ -124,7 +126,7 @@ public class WeatherDataUI {
         System.out.print("End date (will be included)\n");
         LocalDate dateTo = getDateInput();
                        
-        presentResult(_weatherData.missingValues(dateFrom, dateTo));
+        presentResult(_weatherData.dailyMissingValues(dateFrom, dateTo));
 
     }   
     /**
@@ -138,19 +140,32 @@ public class WeatherDataUI {
         System.out.print("End date (will be included)\n");
         LocalDate dateTo = getDateInput();
                        
-        presentResult(_weatherData.approvedValues(dateFrom, dateTo));
+        presentResult(_weatherData.approvedPercentage(dateFrom, dateTo));
     }    
     /**
-     * Present search result.
+     * Query user for two dates and present the average temperature of all 
+     * values between the two dates.
+     */
+    private void periodAverageTemperature() {
+        System.out.println("Calculate average temperature between the two dates");
+    	System.out.print("Start date (will be included)\n");
+    	LocalDate dateFrom = getDateInput();
+        System.out.print("End date (will be included)\n");
+        LocalDate dateTo = getDateInput();
+                       
+        presentResult(_weatherData.periodAverage(dateFrom, dateTo));
+    }
+    /**
+     * Present search result. Rows are formatted one at a time as they are printed.
      * 
      * @param result the result to present
      */
-    private void presentResult(List<String> result) {
+    private void presentResult(QueryResult result) {
     	if(result.size() == 0) {
     		System.out.println("No matching values for the provided query.");
     	}    	
-    	for(String s : result) {
-    		System.out.println(s);
+    	for(int i = 0; i < result.size(); i++) {
+    		System.out.println(result.format(i));
     	}
     }
     /**
@@ -162,7 +177,8 @@ public class WeatherDataUI {
         return "-------------------\n"
                 + "1. Average temperatures\n"
                 + "2. Missing values\n"
-                + "3. Approved values\n"                
+                + "3. Approved values\n"
+                + "5. Average temperature for period\n"
                 + "-------------------\n"
                 + "4. Quit";
     }
@@ -0,0 +1,84 @@
+package algo.weatherdata;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Watches a CSV weather data file and adds the lines appended to it to a handler
+ * on a background thread. The handler publishes every update as a new data set,
+ * so queries keep running against the previous data while new lines are read.
+ */
+public class WeatherDataWatcher implements Closeable {
+
+    private final WeatherDataHandler handler;
+    private final Path file;
+    private final WatchService watchService;
+
+    /**
+     * Start watching a data file. Lines already in the file that are newer than the
+     * data in the handler are added first, e.g. when the handler was loaded from an
+     * older snapshot.
+     * @param handler handler to add new readings to
+     * @param filePath path to the CSV data file
+     * @throws IOException if the directory of the file can not be watched
+     */
+    public WeatherDataWatcher(WeatherDataHandler handler, String filePath) throws IOException {
+        this.handler = handler;
+        this.file = Paths.get(filePath).toAbsolutePath().normalize();
+        Path directory = file.getParent(); //Only directories can be watched
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(this::watch, "weather-data-watcher");
+        thread.setDaemon(true); //Never keeps the program alive
+        thread.start();
+    }
+
+    //Read new lines every time the file changes, until the watcher is closed
+    private void watch() {
+        try {
+            ingest(); //O(k) k = bytes not read yet
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    //Events may have been lost on overflow, so the file may have changed
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context());
+                }
+                if (changed) {
+                    ingest(); //O(k)
+                }
+                if (!key.reset()) {
+                    System.out.println("Stopped watching " + file + ", the directory is no longer accessible");
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //Closed
+        }
+    }
+
+    private void ingest() {
+        try {
+            handler.appendData(file.toString()); //O(k)
+        } catch (IOException e) {
+            System.out.println("Could not read new data: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Stop watching the file. Lines that are being read when the watcher is closed
+     * are still added.
+     * @throws IOException if the watch service can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close(); //Wakes up the watching thread, which then ends
+    }
+}
@@ -0,0 +1,141 @@
+package algo.weatherdata;
+
+/**
+ * Summary of every block of {@value #BLOCK_SIZE} consecutive readings: the date of
+ * its last reading, the sum of its temperatures and its number of approved readings.
+ * Every block but the last holds exactly BLOCK_SIZE readings, so the number of
+ * readings in a range needs no summary of its own.
+ * <p>
+ * Totals over a range of readings add up the summaries of the blocks inside the
+ * range and only visit the readings of the two blocks at its ends. That is slower
+ * than {@link PrefixSums} but takes a few bytes per block instead of twelve bytes
+ * per reading, for readings that are kept off the heap or compressed.
+ */
+final class ZoneMap implements ReadingSums {
+
+    static final int BLOCK_SIZE = 1024;
+    private static final int BLOCK_SHIFT = 10;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    //Readings the blocks summarise
+    private final WeatherDataColumns data;
+    //Date of the last reading of each block, as days since 1970-01-01
+    private final int[] lastDays;
+    //Sum of temperatures of each block in tenths of a degree
+    private final long[] temperatureSums;
+    private final int[] approvedCounts;
+
+    private ZoneMap(WeatherDataColumns data, int blocks) {
+        this.data = data;
+        this.lastDays = new int[blocks];
+        this.temperatureSums = new long[blocks];
+        this.approvedCounts = new int[blocks];
+    }
+
+    /**
+     * Summarise all readings.
+     * @param data readings to summarise, not changed any more
+     * @return summaries of every block of the readings
+     */
+    static ZoneMap build(WeatherDataColumns data) {
+        int size = data.size(); //O(1)
+        ZoneMap zones = new ZoneMap(data, (size + BLOCK_MASK) >>> BLOCK_SHIFT); //O(n / B) B = block size
+        for (int i = 0; i < size; i++) { //O(n)
+            int block = i >>> BLOCK_SHIFT;
+            zones.temperatureSums[block] += data.tempTenths(i);
+            zones.approvedCounts[block] += data.isApproved(i) ? 1 : 0;
+            if ((i & BLOCK_MASK) == BLOCK_MASK || i == size - 1) {
+                zones.lastDays[block] = data.epochDay(i);
+            }
+        }
+        return zones;
+    }
+
+    /**
+     * Estimate the heap used by the summaries.
+     * @return size in bytes of the summaries, not counting the readings
+     */
+    long heapBytes() {
+        return lastDays.length * 16L; //O(1)
+    }
+
+    /**
+     * Returns the index of the first reading on or after the given date (lower
+     * bound). Finds the block from the summaries first, then searches only the
+     * readings of that block. The readings must be sorted by date.
+     * @param epochDay date to search for, as days since 1970-01-01
+     * @return index of the first reading with a date not before epochDay, the number of readings if every reading is earlier
+     */
+    int firstIndexFrom(long epochDay) {
+        int low = 0, high = lastDays.length; //O(1)
+        while (low < high) { //O(log(n / B)) B = block size
+            int middle = (low + high) >>> 1; //O(1)
+            if (lastDays[middle] < epochDay) { //O(1)
+                low = middle + 1; //O(1)
+            } else {
+                high = middle; //O(1)
+            }
+        }
+        if (low == lastDays.length) {
+            return data.size(); //O(1)
+        }
+        high = blockEnd(low << BLOCK_SHIFT); //O(1)
+        low = low << BLOCK_SHIFT; //O(1)
+        while (low < high) { //O(log B)
+            int middle = (low + high) >>> 1; //O(1)
+            if (data.epochDay(middle) < epochDay) { //O(1)
+                low = middle + 1; //O(1)
+            } else {
+                high = middle; //O(1)
+            }
+        }
+        return low; //O(1)
+    }
+
+    /**
+     * Adds up the summaries of whole blocks and visits at most the two blocks at the ends.
+     */
+    @Override
+    public long temperatureSum(int fromIndex, int toIndex) {
+        long sum = 0;
+        int index = fromIndex;
+        while (index < toIndex) { //O(n / B + B) B = block size
+            int blockEnd = blockEnd(index); //O(1)
+            if ((index & BLOCK_MASK) == 0 && toIndex >= blockEnd) {
+                sum += temperatureSums[index >>> BLOCK_SHIFT]; //O(1)
+                index = blockEnd;
+            } else {
+                for (int end = Math.min(toIndex, blockEnd); index < end; index++) { //O(B)
+                    sum += data.tempTenths(index);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Adds up the summaries of whole blocks and visits at most the two blocks at the ends.
+     */
+    @Override
+    public int approvedCount(int fromIndex, int toIndex) {
+        int count = 0;
+        int index = fromIndex;
+        while (index < toIndex) { //O(n / B + B) B = block size
+            int blockEnd = blockEnd(index); //O(1)
+            if ((index & BLOCK_MASK) == 0 && toIndex >= blockEnd) {
+                count += approvedCounts[index >>> BLOCK_SHIFT]; //O(1)
+                index = blockEnd;
+            } else {
+                for (int end = Math.min(toIndex, blockEnd); index < end; index++) { //O(B)
+                    count += data.isApproved(index) ? 1 : 0;
+                }
+            }
+        }
+        return count;
+    }
+
+    //Index after the last reading of the block that holds the reading
+    private int blockEnd(int index) {
+        return Math.min(data.size(), ((index >>> BLOCK_SHIFT) + 1) << BLOCK_SHIFT);
+    }
+}
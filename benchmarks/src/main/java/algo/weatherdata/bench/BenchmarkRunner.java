@@ -0,0 +1,25 @@
+package algo.weatherdata.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all weather data benchmarks with the GC profiler attached, so every run
+ * reports throughput, latency percentiles and allocation rate. Any regular JMH
+ * command line option can be given, e.g. {@code -rf json -rff result.json} to
+ * keep the result for comparison with a later version.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(BenchmarkRunner.class.getPackage().getName() + "\\.")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
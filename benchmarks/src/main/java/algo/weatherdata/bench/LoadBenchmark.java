@@ -0,0 +1,40 @@
+package algo.weatherdata.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import algo.weatherdata.WeatherDataHandler;
+
+/**
+ * Measures loading a weather data file into a new {@link WeatherDataHandler}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+    //Relative to the benchmarks directory, override with -p dataFile=...
+    @Param("../smhi-opendata.csv")
+    public String dataFile;
+
+    @Benchmark
+    public WeatherDataHandler loadData() throws IOException {
+        WeatherDataHandler handler = new WeatherDataHandler();
+        handler.loadData(dataFile);
+        return handler;
+    }
+}
@@ -0,0 +1,85 @@
+package algo.weatherdata.bench;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import algo.weatherdata.WeatherDataHandler;
+
+/**
+ * Measures the three queries of {@link WeatherDataHandler} over a short, a medium
+ * and the full history range of the Visby data file. Without the query cache every
+ * call computes its result, with it every call after the first is a cache hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    /**
+     * Query ranges, all ending on the last day of the Visby data file.
+     */
+    public enum Range {
+        WEEK("2020-12-25"),
+        YEAR("2020-01-01"),
+        FULL("1946-01-01");
+
+        final LocalDate from;
+        final LocalDate to = LocalDate.parse("2020-12-31");
+
+        Range(String from) {
+            this.from = LocalDate.parse(from);
+        }
+    }
+
+    //Relative to the benchmarks directory, override with -p dataFile=...
+    @Param("../smhi-opendata.csv")
+    public String dataFile;
+
+    @Param({"WEEK", "YEAR", "FULL"})
+    public Range range;
+
+    //False measures the queries themselves, true the cache in front of them
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private WeatherDataHandler handler;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        handler = cached ? new WeatherDataHandler() : new WeatherDataHandler(0, 0);
+        handler.loadData(dataFile);
+    }
+
+    @Benchmark
+    public List<String> averageTemperatures() {
+        return handler.averageTemperatures(range.from, range.to);
+    }
+
+    @Benchmark
+    public List<String> missingValues() {
+        return handler.missingValues(range.from, range.to);
+    }
+
+    @Benchmark
+    public List<String> approvedValues() {
+        return handler.approvedValues(range.from, range.to);
+    }
+}